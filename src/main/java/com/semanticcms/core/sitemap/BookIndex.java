@@ -0,0 +1,197 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.semanticcms.core.model.PageRef;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The URLs of each page of one book, maintained one page at a time.
+ *
+ * <p>All URLs are kept in a single ordered structure, most recently modified first, so that updating one page costs
+ * O(views &times; log n) instead of traversing all pages of the book.  An update that changes the child pages of a
+ * page changes the structure of the book, and requires a new traversal.</p>
+ *
+ * <p>This is not thread-safe.</p>
+ */
+final class BookIndex {
+
+  /**
+   * The URLs found for one page, along with its child pages within the same book.
+   */
+  static final class PageUrls {
+
+    private final List<SiteMapUrl> urls;
+    private final Set<PageRef> childRefs;
+
+    /**
+     * @param  urls  no defensive copy is made, the caller must not modify after this call
+     * @param  childRefs  no defensive copy is made, the caller must not modify after this call
+     */
+    PageUrls(List<SiteMapUrl> urls, Set<PageRef> childRefs) {
+      this.urls = Collections.unmodifiableList(urls);
+      this.childRefs = Collections.unmodifiableSet(childRefs);
+    }
+  }
+
+  /**
+   * The distinct URLs removed and added by one or more updates, so that only the affected parts of a sitemap are
+   * created again.  A URL removed by one page then added by another, or the reverse, is not changed.
+   */
+  static final class Changes {
+
+    private final SortedSet<SiteMapUrl> removed = new TreeSet<>();
+    private final SortedSet<SiteMapUrl> added = new TreeSet<>();
+
+    private void removed(SiteMapUrl url) {
+      if (!added.remove(url)) {
+        removed.add(url);
+      }
+    }
+
+    private void added(SiteMapUrl url) {
+      if (!removed.remove(url)) {
+        added.add(url);
+      }
+    }
+
+    boolean isEmpty() {
+      return removed.isEmpty() && added.isEmpty();
+    }
+
+    SortedSet<SiteMapUrl> getRemoved() {
+      return Collections.unmodifiableSortedSet(removed);
+    }
+
+    SortedSet<SiteMapUrl> getAdded() {
+      return Collections.unmodifiableSortedSet(added);
+    }
+  }
+
+  private final Map<PageRef, PageUrls> pages;
+
+  /**
+   * The number of pages that found each URL, since more than one page may find the same URL.
+   */
+  private final TreeMap<SiteMapUrl, Integer> urls = new TreeMap<>();
+
+  /**
+   * @param  pages  the URLs of every page of the book, no defensive copy is made, the caller must not use after this
+   *                call
+   */
+  BookIndex(Map<PageRef, PageUrls> pages) {
+    this.pages = pages;
+    for (PageUrls pageUrls : pages.values()) {
+      add(pageUrls, null);
+    }
+  }
+
+  private void add(PageUrls pageUrls, Changes changes) {
+    for (SiteMapUrl url : pageUrls.urls) {
+      if (urls.merge(url, 1, Integer::sum) == 1 && changes != null) {
+        changes.added(url);
+      }
+    }
+  }
+
+  private void remove(PageUrls pageUrls, Changes changes) {
+    for (SiteMapUrl url : pageUrls.urls) {
+      if (urls.computeIfPresent(url, (u, count) -> count == 1 ? null : count - 1) == null && changes != null) {
+        changes.removed(url);
+      }
+    }
+  }
+
+  /**
+   * Updates the URLs of one page.
+   *
+   * @return  {@code true} when updated, or {@code false} when the page is not part of this book or its child pages
+   *          have changed, in which case the book must be traversed again
+   */
+  boolean update(PageRef pageRef, PageUrls pageUrls) {
+    return update(pageRef, pageUrls, null);
+  }
+
+  /**
+   * Updates the URLs of one page, recording the distinct URLs removed and added.
+   *
+   * @param  changes  the changes to record into, or {@code null} to not record
+   *
+   * @return  {@code true} when updated, or {@code false} when the page is not part of this book or its child pages
+   *          have changed, in which case the book must be traversed again
+   */
+  boolean update(PageRef pageRef, PageUrls pageUrls, Changes changes) {
+    PageUrls old = pages.get(pageRef);
+    if (old == null || !old.childRefs.equals(pageUrls.childRefs)) {
+      return false;
+    }
+    remove(old, changes);
+    add(pageUrls, changes);
+    pages.put(pageRef, pageUrls);
+    return true;
+  }
+
+  /**
+   * Gets the number of pages.
+   */
+  int getPageCount() {
+    return pages.size();
+  }
+
+  /**
+   * Gets the number of distinct URLs.
+   */
+  int getUrlCount() {
+    return urls.size();
+  }
+
+  /**
+   * Gets the number of distinct URLs without a known last modified time.
+   *
+   * <p>Note: This depends on the nulls-last ordering of {@link SiteMapUrl#compareTo(com.semanticcms.core.sitemap.SiteMapUrl)}.</p>
+   */
+  int getUrlsWithoutLastmodCount() {
+    int count = 0;
+    for (SiteMapUrl url : urls.descendingKeySet()) {
+      if (url.getLastmod() != null) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Gets a copy of all URLs, ordered by {@link SiteMapUrl#compareTo(com.semanticcms.core.sitemap.SiteMapUrl)}.
+   */
+  SortedSet<SiteMapUrl> getUrls() {
+    return new TreeSet<>(urls.keySet());
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.lang.Strings;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.joda.time.ReadableInstant;
+
+/**
+ * The URLs of one book, along with their aggregate last modified time.
+ * This is the result of a traversal of the book, possibly {@link #update(com.semanticcms.core.sitemap.BookIndex.Changes) updated}
+ * since.
+ *
+ * <p>Books with more URLs than allowed in a single sitemap are split into multiple {@link Shard shards}, each holding
+ * a contiguous range of URLs in {@link #SHARD_ORDER}.</p>
+ */
+final class BookSiteMap {
+
+  /**
+   * Orders by loc only, so that a change in last modified time does not move a URL between shards.
+   */
+  static final Comparator<SiteMapUrl> SHARD_ORDER = (url1, url2) -> {
+    int diff = Strings.compareToIgnoreCaseCarefulEquals(url1.getLoc(), url2.getLoc());
+    return diff != 0 ? diff : url1.compareTo(url2);
+  };
+
+  /**
+   * Gets the most recent of the last modified of all URLs.
+   *
+   * <p>Note: This depends on the nulls-last ordering of {@link SiteMapUrl#compareTo(com.semanticcms.core.sitemap.SiteMapUrl)}.</p>
+   */
+  private static ReadableInstant getLastModified(SortedSet<SiteMapUrl> urls) {
+    if (urls.isEmpty()) {
+      return null;
+    } else if (urls.last().getLastmod() == null) {
+      return null;
+    } else {
+      return urls.first().getLastmod();
+    }
+  }
+
+  /**
+   * One page of a sitemap, within the limits of the sitemap protocol.
+   */
+  static final class Shard {
+
+    private final SortedSet<SiteMapUrl> urls;
+    private final ReadableInstant lastModified;
+
+    /**
+     * The last URL in {@link #SHARD_ORDER} or {@code null} when there are no URLs.
+     */
+    private final SiteMapUrl last;
+
+    private volatile byte[] bytes;
+    private volatile byte[] gzip;
+    private volatile String hash;
+
+    private Shard(SortedSet<SiteMapUrl> urls) {
+      this.urls = Collections.unmodifiableSortedSet(urls);
+      this.lastModified = BookSiteMap.getLastModified(urls);
+      SiteMapUrl max = null;
+      for (SiteMapUrl url : urls) {
+        if (max == null || SHARD_ORDER.compare(url, max) > 0) {
+          max = url;
+        }
+      }
+      this.last = max;
+    }
+
+    /**
+     * Gets the URLs of this shard, ordered by {@link SiteMapUrl#compareTo(com.semanticcms.core.sitemap.SiteMapUrl)}.
+     */
+    SortedSet<SiteMapUrl> getUrls() {
+      return urls;
+    }
+
+    /**
+     * Gets the most recent of the last modified of all URLs in this shard.
+     *
+     * @return  the most recently last modified or {@code null} if unknown or there are no URLs
+     */
+    ReadableInstant getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * Gets the rendered sitemap of this shard, when already generated.
+     *
+     * @param  gzip  Is the gzip-compressed representation?
+     *
+     * @return  the rendered sitemap or {@code null} when not yet generated
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    byte[] getBytes(boolean gzip) {
+      return gzip ? this.gzip : bytes;
+    }
+
+    /**
+     * Stores the rendered sitemap of this shard.  Concurrent requests may each generate the same content, in which
+     * case any one is kept.
+     *
+     * @param  gzip  Is the gzip-compressed representation?
+     * @param  bytes  no defensive copy is made, the caller must not modify after this call
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    void setBytes(boolean gzip, byte[] bytes) {
+      if (gzip) {
+        this.gzip = bytes;
+      } else {
+        this.bytes = bytes;
+      }
+    }
+
+    /**
+     * Gets the strong entity tag of this shard, computed from its URLs and memoized.
+     *
+     * @param  gzip  Is the gzip-compressed representation?
+     */
+    String getETag(boolean gzip) {
+      String h = hash;
+      if (h == null) {
+        MessageDigest digest = ETag.newDigest();
+        for (SiteMapUrl url : urls) {
+          ETag.update(digest, url);
+        }
+        h = ETag.getHash(digest);
+        hash = h;
+      }
+      return ETag.toETag(h, gzip);
+    }
+  }
+
+  /**
+   * Gets the most recent of the last modified of all shards.
+   */
+  private static ReadableInstant getLastModified(List<Shard> shards) {
+    ReadableInstant lastModified = null;
+    for (Shard shard : shards) {
+      if (!shard.urls.isEmpty()) {
+        ReadableInstant shardLastModified = shard.lastModified;
+        if (shardLastModified == null) {
+          // Unknown for at least one URL
+          return null;
+        }
+        if (lastModified == null || shardLastModified.isAfter(lastModified)) {
+          lastModified = shardLastModified;
+        }
+      }
+    }
+    return lastModified;
+  }
+
+  private final List<Shard> shards;
+  private final int urlCount;
+  private final ReadableInstant lastModified;
+
+  /**
+   * @param  shards  no defensive copy is made, the caller must not modify after this call
+   */
+  private BookSiteMap(List<Shard> shards) {
+    assert !shards.isEmpty();
+    this.shards = Collections.unmodifiableList(shards);
+    int count = 0;
+    for (Shard shard : shards) {
+      count += shard.urls.size();
+    }
+    this.urlCount = count;
+    this.lastModified = getLastModified(shards);
+  }
+
+  /**
+   * Creates the sitemap of a book.
+   *
+   * @param  shardUrls  the URLs split into one or more shards, in {@link #SHARD_ORDER}, no defensive copy is made,
+   *                    the caller must not modify after this call
+   */
+  static BookSiteMap create(List<SortedSet<SiteMapUrl>> shardUrls) {
+    List<Shard> shards = new ArrayList<>(shardUrls.size());
+    for (SortedSet<SiteMapUrl> urls : shardUrls) {
+      shards.add(new Shard(urls));
+    }
+    return new BookSiteMap(shards);
+  }
+
+  /**
+   * Finds the shard containing the given URL, or where it would be added, by its position in {@link #SHARD_ORDER}.
+   */
+  private int findShard(SiteMapUrl url) {
+    int low = 0;
+    int high = shards.size() - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      SiteMapUrl last = shards.get(mid).last;
+      if (last != null && SHARD_ORDER.compare(url, last) > 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Creates a new sitemap with the given changes applied.  Only the shards containing changed URLs are created again,
+   * split further when beyond the limits of the sitemap protocol.  All other shards are kept as-is, along with their
+   * rendered sitemaps and entity tags.
+   *
+   * @return  the new sitemap or this sitemap when there are no changes
+   */
+  BookSiteMap update(BookIndex.Changes changes) throws IOException {
+    if (changes.isEmpty()) {
+      return this;
+    }
+    // The new URLs of each changed shard, by index
+    Map<Integer, SortedSet<SiteMapUrl>> changed = new TreeMap<>();
+    for (SiteMapUrl url : changes.getRemoved()) {
+      changed.computeIfAbsent(findShard(url), i -> new TreeSet<>(shards.get(i).urls)).remove(url);
+    }
+    for (SiteMapUrl url : changes.getAdded()) {
+      changed.computeIfAbsent(findShard(url), i -> new TreeSet<>(shards.get(i).urls)).add(url);
+    }
+    List<Shard> newShards = new ArrayList<>(shards.size());
+    for (int i = 0; i < shards.size(); i++) {
+      SortedSet<SiteMapUrl> urls = changed.get(i);
+      if (urls == null) {
+        newShards.add(shards.get(i));
+      } else {
+        for (SortedSet<SiteMapUrl> split : SiteMapServlet.split(urls)) {
+          if (!split.isEmpty()) {
+            newShards.add(new Shard(split));
+          }
+        }
+      }
+    }
+    if (newShards.isEmpty()) {
+      // There is always at least one shard
+      newShards.add(new Shard(new TreeSet<>()));
+    }
+    return new BookSiteMap(newShards);
+  }
+
+  /**
+   * Checks if there are no URLs.
+   */
+  boolean isEmpty() {
+    return urlCount == 0;
+  }
+
+  /**
+   * Gets all URLs, ordered within each shard only.
+   */
+  Collection<SiteMapUrl> getUrls() {
+    if (shards.size() == 1) {
+      return shards.get(0).urls;
+    }
+    List<SiteMapUrl> urls = new ArrayList<>(urlCount);
+    for (Shard shard : shards) {
+      urls.addAll(shard.urls);
+    }
+    return Collections.unmodifiableList(urls);
+  }
+
+  /**
+   * Gets the most recent of the last modified of all URLs.  If any URL has an
+   * unknown last modified time, the sitemap overall will not have any last
+   * modified time.
+   *
+   * @return  the most recently last modified or {@code null} if unknown or there are no URLs
+   */
+  ReadableInstant getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Gets the shards of this sitemap.  There is always at least one shard, even when there are no URLs.
+   */
+  List<Shard> getShards() {
+    return shards;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.sitemap;
+
+import java.io.IOException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Counts the bytes written to the output stream of a response.
+ */
+final class CountingHttpServletResponse extends HttpServletResponseWrapper {
+
+  private ServletOutputStream out;
+  private long count;
+
+  CountingHttpServletResponse(HttpServletResponse resp) {
+    super(resp);
+  }
+
+  /**
+   * Gets the number of bytes written to the output stream.
+   */
+  long getCount() {
+    return count;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (out == null) {
+      final ServletOutputStream wrapped = super.getOutputStream();
+      out = new ServletOutputStream() {
+        @Override
+        public boolean isReady() {
+          return wrapped.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          wrapped.setWriteListener(writeListener);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+          wrapped.write(b);
+          count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          wrapped.write(b, off, len);
+          count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+          wrapped.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          wrapped.close();
+        }
+      };
+    }
+    return out;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.servlet.http.HttpServletUtil;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Enumeration;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.joda.time.ReadableInstant;
+
+/**
+ * Strong entity tags computed from the content of a sitemap, along with
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7232#section-3.2">If-None-Match</a> support.
+ * This allows conditional requests even when the last modified time is unknown.
+ */
+final class ETag {
+
+  /** Make no instances. */
+  private ETag() {
+    throw new AssertionError();
+  }
+
+  private static final String ALGORITHM = "SHA-256";
+
+  private static final String ETAG_HEADER = "ETag";
+
+  private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+  /**
+   * The suffix added to the entity tag of the gzip-compressed representation.
+   */
+  private static final String GZIP_SUFFIX = "-gz";
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(ALGORITHM + " is required in all Java platforms", e);
+    }
+  }
+
+  static void update(MessageDigest digest, String value) {
+    if (value != null) {
+      digest.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+    // Separator
+    digest.update((byte) 0);
+  }
+
+  static void update(MessageDigest digest, SiteMapUrl url) {
+    digest.update((byte) (url.isAbsolute() ? 1 : 0));
+    update(digest, url.getLoc());
+    ReadableInstant lastmod = url.getLastmod();
+    update(digest, lastmod == null ? null : Long.toString(lastmod.getMillis()));
+  }
+
+  /**
+   * Gets the hash of a digest, to be used with {@link #toETag(java.lang.String, boolean)}.
+   */
+  static String getHash(MessageDigest digest) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+  }
+
+  /**
+   * Gets the strong entity tag for the given hash.
+   *
+   * @param  gzip  Is the gzip-compressed representation?
+   */
+  static String toETag(String hash, boolean gzip) {
+    return '"' + hash + (gzip ? GZIP_SUFFIX : "") + '"';
+  }
+
+  /**
+   * Checks if the request has an If-None-Match header.  When it does, any If-Modified-Since must be ignored, so
+   * {@link javax.servlet.http.HttpServlet#getLastModified(javax.servlet.http.HttpServletRequest)} should return
+   * {@code -1}.
+   */
+  static boolean hasIfNoneMatch(HttpServletRequest req) {
+    return req.getHeader(IF_NONE_MATCH_HEADER) != null;
+  }
+
+  /**
+   * Sets the ETag header on GET and HEAD requests, then sends {@link HttpServletResponse#SC_NOT_MODIFIED} when it
+   * matches If-None-Match.
+   *
+   * @return  {@code true} when not modified and the response is complete
+   */
+  static boolean notModified(HttpServletRequest req, HttpServletResponse resp, String etag) {
+    String method = req.getMethod();
+    if (
+        !HttpServletUtil.METHOD_GET.equals(method)
+            && !HttpServletUtil.METHOD_HEAD.equals(method)
+    ) {
+      return false;
+    }
+    resp.setHeader(ETAG_HEADER, etag);
+    Enumeration<String> ifNoneMatches = req.getHeaders(IF_NONE_MATCH_HEADER);
+    while (ifNoneMatches.hasMoreElements()) {
+      for (String tag : ifNoneMatches.nextElement().split(",")) {
+        tag = tag.trim();
+        // Weak comparison
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if ("*".equals(tag) || etag.equals(tag)) {
+          resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.concurrent.Executors;
+import com.aoapps.lang.concurrent.ExecutionExceptions;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.joda.time.Instant;
+import org.joda.time.ReadableInstant;
+
+/**
+ * Scans for additional sitemaps in <code>META-INF/sitemap-index.xml</code> of all JARs.
+ *
+ * <p>Each sitemap index is parsed as a stream of XML, in any layout valid for the sitemap protocol.  Invalid content
+ * is logged and skipped instead of failing application start-up.</p>
+ *
+ * <p>The sitemap indexes are parsed concurrently.  When a cache file is given, the sitemaps parsed from each JAR are
+ * stored by a digest of the path, size, and last modified time of the JAR, so that a JAR unchanged since a previous
+ * scan is not parsed again.</p>
+ *
+ * @see  SiteMapIndexServlet.JarSitemapIndexInitializer#CACHE_INIT_PARAM
+ */
+final class JarSitemapIndexes {
+
+  private static final Logger logger = Logger.getLogger(JarSitemapIndexes.class.getName());
+
+  // Note: Matches ao-ant-tasks:GenerateJavadocSitemap.java:META_INF_DIRECTORY + SITEMAP_INDEX_NAME (but with a slash)
+  private static final String META_INF_SITEMAP_INDEX_NAME = "/META-INF" + SiteMapIndexServlet.SERVLET_PATH;
+
+  /**
+   * The gzip-compressed form of the sitemap index, which is also scanned for.
+   */
+  private static final String META_INF_GZIP_SITEMAP_INDEX_NAME = "/META-INF" + SiteMapIndexServlet.GZIP_SERVLET_PATH;
+
+  private static final String GZIP_EXTENSION = ".gz";
+
+  private static final String SITEMAP = "sitemap";
+
+  private static final String LOC = "loc";
+
+  private static final String LASTMOD = "lastmod";
+
+  /**
+   * Stored in place of an unknown last modified time.
+   */
+  private static final long NO_LASTMOD = Long.MIN_VALUE;
+
+  /**
+   * Identifies the format of the cache file, incremented on any incompatible change.
+   */
+  private static final int VERSION = 2;
+
+  /**
+   * The name of the cache file within the temporary directory of the servlet context.
+   */
+  static final String CACHE_FILE = "jar-sitemap-indexes.cache";
+
+  /**
+   * The cache file or {@code null} when not cached.
+   */
+  private final Path cacheFile;
+
+  JarSitemapIndexes(Path cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * Gets the key of a sitemap index in the cache, which is a digest of the path, size, and last modified time of the
+   * JAR or file containing it.
+   *
+   * @return  the key or {@code null} when not from a JAR or file, and may not be cached
+   */
+  private static String getKey(URL url) throws IOException {
+    URL fileUrl;
+    URLConnection conn = url.openConnection();
+    if (conn instanceof JarURLConnection) {
+      fileUrl = ((JarURLConnection) conn).getJarFileURL();
+    } else {
+      fileUrl = url;
+    }
+    if (!"file".equals(fileUrl.getProtocol())) {
+      return null;
+    }
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(Paths.get(fileUrl.toURI()), BasicFileAttributes.class);
+    } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException | NoSuchFileException e) {
+      return null;
+    }
+    MessageDigest digest = ETag.newDigest();
+    ETag.update(digest, url.toExternalForm());
+    ETag.update(digest, Long.toString(attributes.size()));
+    ETag.update(digest, Long.toString(attributes.lastModifiedTime().toMillis()));
+    return ETag.getHash(digest);
+  }
+
+  /**
+   * Parses a non-negative decimal number.
+   *
+   * @return  the number or {@code -1} when any character is not a digit
+   */
+  private static int parseDigits(String s, int begin, int end) {
+    int value = 0;
+    for (int i = begin; i < end; i++) {
+      char ch = s.charAt(i);
+      if (ch < '0' || ch > '9') {
+        return -1;
+      }
+      value = value * 10 + (ch - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Parses a <a href="https://www.w3.org/TR/NOTE-datetime">W3C Datetime</a>, as used by the sitemap protocol.  A
+   * date or time without an offset is in UTC.
+   *
+   * @return  the time in milliseconds since the epoch
+   *
+   * @throws  DateTimeParseException  when not a valid W3C Datetime
+   */
+  static long parseLastmod(String lastmod) throws DateTimeParseException {
+    int length = lastmod.length();
+    if (
+        // Fast path for the format written by SiteMapWriter
+        length == 20
+            && lastmod.charAt(4) == '-'
+            && lastmod.charAt(7) == '-'
+            && lastmod.charAt(10) == 'T'
+            && lastmod.charAt(13) == ':'
+            && lastmod.charAt(16) == ':'
+            && lastmod.charAt(19) == 'Z'
+    ) {
+      int year = parseDigits(lastmod, 0, 4);
+      int month = parseDigits(lastmod, 5, 7);
+      int day = parseDigits(lastmod, 8, 10);
+      int hour = parseDigits(lastmod, 11, 13);
+      int minute = parseDigits(lastmod, 14, 16);
+      int second = parseDigits(lastmod, 17, 19);
+      if ((year | month | day | hour | minute | second) >= 0) {
+        try {
+          return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC) * 1000;
+        } catch (DateTimeException e) {
+          // Reported by the full parser below
+        }
+      }
+    }
+    switch (length) {
+      case 4:
+        return Year.parse(lastmod).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+      case 7:
+        return YearMonth.parse(lastmod).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+      case 10:
+        return LocalDate.parse(lastmod).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+      default:
+        TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parse(lastmod);
+        LocalDateTime dateTime = LocalDateTime.from(parsed);
+        ZoneOffset offset = parsed.isSupported(ChronoField.OFFSET_SECONDS) ? ZoneOffset.from(parsed) : ZoneOffset.UTC;
+        return dateTime.toInstant(offset).toEpochMilli();
+    }
+  }
+
+  /**
+   * Parses one sitemap index, streaming its content.  Any <code>&lt;sitemap&gt;</code> without a
+   * <code>&lt;loc&gt;</code> is skipped, and an invalid <code>&lt;lastmod&gt;</code> is treated as unknown.
+   *
+   * @param  systemId  identifies the sitemap index in log messages
+   * @param  sitemaps  the list to add each sitemap to, which will contain all sitemaps before any invalid XML
+   *
+   * @throws  XMLStreamException  when not well-formed XML
+   */
+  static void parse(InputStream in, String systemId, List<SiteMapUrl> sitemaps) throws XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    XMLStreamReader reader = factory.createXMLStreamReader(systemId, in);
+    try {
+      boolean inSitemap = false;
+      String loc = null;
+      String lastmod = null;
+      // Sitemaps generated together often share the same last modified
+      String lastLastmod = null;
+      ReadableInstant lastInstant = null;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          String name = reader.getLocalName();
+          if (SITEMAP.equals(name)) {
+            inSitemap = true;
+            loc = null;
+            lastmod = null;
+          } else if (inSitemap && LOC.equals(name)) {
+            loc = reader.getElementText().trim();
+          } else if (inSitemap && LASTMOD.equals(name)) {
+            lastmod = reader.getElementText().trim();
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT && inSitemap && SITEMAP.equals(reader.getLocalName())) {
+          inSitemap = false;
+          if (loc == null || loc.isEmpty()) {
+            logger.log(Level.WARNING, "Skipping sitemap without location in {0}", systemId);
+          } else {
+            ReadableInstant instant = null;
+            if (lastmod != null) {
+              try {
+                if (!lastmod.equals(lastLastmod)) {
+                  lastInstant = new Instant(parseLastmod(lastmod));
+                  lastLastmod = lastmod;
+                }
+                instant = lastInstant;
+              } catch (DateTimeParseException e) {
+                logger.log(Level.WARNING, "Ignoring invalid last modified in " + systemId + ": " + lastmod, e);
+              }
+            }
+            sitemaps.add(new SiteMapUrl(true, loc, instant));
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Parses one sitemap index, which is gzip-compressed when its name ends in <code>.gz</code>.  Invalid XML is
+   * logged, keeping any sitemaps before it.
+   */
+  private static List<SiteMapUrl> parse(URL url) throws IOException {
+    List<SiteMapUrl> sitemaps = new ArrayList<>();
+    URLConnection conn = url.openConnection();
+    conn.setUseCaches(false);
+    try (InputStream in = conn.getInputStream()) {
+      parse(
+          url.getPath().endsWith(GZIP_EXTENSION) ? new GZIPInputStream(in) : new BufferedInputStream(in),
+          url.toExternalForm(),
+          sitemaps
+      );
+    } catch (XMLStreamException e) {
+      logger.log(Level.WARNING, "Invalid sitemap index at " + url, e);
+    }
+    int count = sitemaps.size();
+    logger.log(Level.INFO, "Found sitemap index at {0} containing {1} {2}",
+        new Object[]{url, count, count == 1 ? "sitemap" : "sitemaps"});
+    return sitemaps;
+  }
+
+  /**
+   * Reads the cache file.
+   *
+   * @return  the sitemaps by key, empty when not cached or unreadable
+   */
+  private Map<String, List<SiteMapUrl>> readCache() {
+    Map<String, List<SiteMapUrl>> cache = new HashMap<>();
+    if (cacheFile != null) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+        if (in.readInt() == VERSION) {
+          int numKeys = in.readInt();
+          for (int i = 0; i < numKeys; i++) {
+            String key = in.readUTF();
+            int count = in.readInt();
+            List<SiteMapUrl> sitemaps = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+              String loc = in.readUTF();
+              long lastmod = in.readLong();
+              sitemaps.add(new SiteMapUrl(true, loc, lastmod == NO_LASTMOD ? null : new Instant(lastmod)));
+            }
+            cache.put(key, sitemaps);
+          }
+        }
+      } catch (NoSuchFileException e) {
+        // Not yet cached
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to read cached sitemap indexes: " + cacheFile, e);
+        cache.clear();
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Writes the cache file, replacing any previous.  Errors are logged and otherwise ignored, since the sitemap
+   * indexes will simply be parsed again.
+   */
+  private void writeCache(Map<String, List<SiteMapUrl>> cache) {
+    try {
+      Path directory = cacheFile.getParent();
+      Files.createDirectories(directory);
+      Path tmp = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          out.writeInt(VERSION);
+          out.writeInt(cache.size());
+          for (Map.Entry<String, List<SiteMapUrl>> entry : cache.entrySet()) {
+            out.writeUTF(entry.getKey());
+            List<SiteMapUrl> sitemaps = entry.getValue();
+            out.writeInt(sitemaps.size());
+            for (SiteMapUrl sitemap : sitemaps) {
+              out.writeUTF(sitemap.getLoc());
+              ReadableInstant lastmod = sitemap.getLastmod();
+              out.writeLong(lastmod == null ? NO_LASTMOD : lastmod.getMillis());
+            }
+          }
+        }
+        try {
+          Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to cache sitemap indexes: " + cacheFile, e);
+    }
+  }
+
+  /**
+   * Scans all <code>META-INF/sitemap-index.xml</code> and <code>META-INF/sitemap-index.xml.gz</code> resources of
+   * the given class loader.
+   */
+  SortedSet<SiteMapUrl> scan(ClassLoader cl) throws IOException, InterruptedException {
+    List<URL> resources = Collections.list(cl.getResources(META_INF_SITEMAP_INDEX_NAME));
+    resources.addAll(Collections.list(cl.getResources(META_INF_GZIP_SITEMAP_INDEX_NAME)));
+    Map<String, List<SiteMapUrl>> cached = readCache();
+    Map<String, List<SiteMapUrl>> newCache = new HashMap<>();
+    SortedSet<SiteMapUrl> jarSitemapIndexes = new TreeSet<>();
+    List<URL> parseUrls = new ArrayList<>();
+    List<String> parseKeys = new ArrayList<>();
+    for (URL url : resources) {
+      String key = cacheFile == null ? null : getKey(url);
+      List<SiteMapUrl> sitemaps = key == null ? null : cached.get(key);
+      if (sitemaps != null) {
+        logger.log(Level.FINE, "Using cached sitemap index for {0}", url);
+        jarSitemapIndexes.addAll(sitemaps);
+        newCache.put(key, sitemaps);
+      } else {
+        parseUrls.add(url);
+        parseKeys.add(key);
+      }
+    }
+    int numParse = parseUrls.size();
+    List<List<SiteMapUrl>> results;
+    if (numParse > 1) {
+      // Concurrent implementation
+      List<Callable<List<SiteMapUrl>>> tasks = new ArrayList<>(numParse);
+      for (URL url : parseUrls) {
+        tasks.add(() -> parse(url));
+      }
+      try (Executors executors = new Executors()) {
+        results = executors.getPerProcessor().callAll(tasks);
+      } catch (ExecutionException e) {
+        // Maintain expected exception types while not losing stack trace
+        ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+        throw new IOException(e);
+      }
+    } else {
+      // Sequential implementation
+      results = new ArrayList<>(numParse);
+      for (URL url : parseUrls) {
+        results.add(parse(url));
+      }
+    }
+    boolean changed = newCache.size() != cached.size();
+    for (int i = 0; i < numParse; i++) {
+      List<SiteMapUrl> sitemaps = results.get(i);
+      jarSitemapIndexes.addAll(sitemaps);
+      String key = parseKeys.get(i);
+      if (key != null) {
+        newCache.put(key, sitemaps);
+        changed = true;
+      }
+    }
+    if (cacheFile != null && changed) {
+      writeCache(newCache);
+    }
+    return jarSitemapIndexes;
+  }
+}
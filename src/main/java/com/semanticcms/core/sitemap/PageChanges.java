@@ -0,0 +1,126 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.sitemap;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the changes made while books are being traversed, since a traversal may have already captured the old
+ * content of a page changed before it completes.  The changed pages are carried into the cached sitemap, to be
+ * updated on its next request, while a traversal of a book changed as a whole is not cached.
+ */
+final class PageChanges {
+
+  /**
+   * A traversal in progress, which must be {@linkplain #end(com.semanticcms.core.sitemap.PageChanges.Traversal) ended}
+   * only once its result is cached, so that no change is missed in-between.
+   */
+  static final class Traversal {
+
+    private final Book book;
+
+    /**
+     * The pages changed since the traversal began, each with a distinct marker.
+     */
+    private final ConcurrentMap<PageRef, Object> changed = new ConcurrentHashMap<>();
+
+    private volatile boolean invalidated;
+
+    private Traversal(Book book) {
+      this.book = book;
+    }
+
+    /**
+     * Gets the pages changed since the traversal began, which may still be added to until ended.
+     */
+    ConcurrentMap<PageRef, Object> getChanged() {
+      return changed;
+    }
+
+    /**
+     * Has the book been changed as a whole since the traversal began?
+     */
+    boolean isInvalidated() {
+      return invalidated;
+    }
+  }
+
+  /**
+   * The traversals in progress.  This is bounded by the number of concurrent traversals.
+   */
+  private final Set<Traversal> traversals = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Begins recording the changes to the given book.
+   */
+  Traversal begin(Book book) {
+    Traversal traversal = new Traversal(book);
+    traversals.add(traversal);
+    return traversal;
+  }
+
+  /**
+   * Stops recording the changes for the given traversal.
+   */
+  void end(Traversal traversal) {
+    traversals.remove(traversal);
+  }
+
+  /**
+   * Records a changed page in all traversals of its book.
+   */
+  void pageChanged(PageRef pageRef) {
+    Book book = pageRef.getBook();
+    for (Traversal traversal : traversals) {
+      if (traversal.book.equals(book)) {
+        traversal.changed.put(pageRef, new Object());
+      }
+    }
+  }
+
+  /**
+   * Records a book changed as a whole in all its traversals.
+   */
+  void bookChanged(Book book) {
+    for (Traversal traversal : traversals) {
+      if (traversal.book.equals(book)) {
+        traversal.invalidated = true;
+      }
+    }
+  }
+
+  /**
+   * Records all books changed in all traversals.
+   */
+  void allChanged() {
+    for (Traversal traversal : traversals) {
+      traversal.invalidated = true;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.lang.concurrent.ExecutionExceptions;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.servlet.ServletException;
+
+/**
+ * Coalesces concurrent computations of the same key, so that all callers await a single computation instead of each
+ * performing their own.
+ *
+ * <p>The computation is performed by the thread of the first caller, while any other caller arriving before it
+ * completes waits for its result, including any exception.  Nothing is retained once complete, so a caller arriving
+ * afterwards computes again.</p>
+ */
+final class SingleFlight<K, V> {
+
+  /**
+   * The computations in progress, by key.  This is bounded by the number of concurrent callers.
+   */
+  private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the result of the computation in progress for the given key, or computes it now when none.
+   *
+   * @param  joined  called, when not {@code null}, before waiting on a computation already in progress
+   */
+  V get(K key, Callable<V> callable, Runnable joined) throws ServletException, IOException {
+    return get(key, callable, joined, true);
+  }
+
+  /**
+   * Gets the result of the computation in progress for the given key, or computes it now when none.
+   *
+   * <p>A caller on a thread of a bounded executor must not wait on a computation performed by another thread, since
+   * that computation may itself be waiting for the same executor.  Such a caller uses a completed result, but
+   * otherwise performs its own computation, without being awaited by others.</p>
+   *
+   * @param  joined  called, when not {@code null}, before using a computation already in progress
+   * @param  mayWait  may wait on a computation in progress by another thread?
+   */
+  V get(K key, Callable<V> callable, Runnable joined, boolean mayWait) throws ServletException, IOException {
+    FutureTask<V> task = new FutureTask<>(callable);
+    FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+    if (existing == null) {
+      try {
+        task.run();
+      } finally {
+        inFlight.remove(key, task);
+      }
+    } else if (mayWait || existing.isDone()) {
+      if (joined != null) {
+        joined.run();
+      }
+      task = existing;
+    } else {
+      // Computed independently instead of waiting
+      task.run();
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+      throw new ServletException(e);
+    } catch (ExecutionException e) {
+      wrapAndThrow(e);
+      throw new AssertionError();
+    }
+  }
+
+  /**
+   * Throws the cause of an exception from another thread, maintaining expected exception types while not losing
+   * stack trace.  An {@link SiteMapAdmission.OverloadedException} remains distinct, to be responded to as such.
+   */
+  static void wrapAndThrow(ExecutionException e) throws ServletException, IOException {
+    ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+    ExecutionExceptions.wrapAndThrow(
+        e,
+        SiteMapAdmission.OverloadedException.class,
+        SiteMapAdmission.OverloadedException::new
+    );
+    ExecutionExceptions.wrapAndThrow(e, ServletException.class, ServletException::new);
+    throw new ServletException(e);
+  }
+
+  /**
+   * Gets the number of computations in progress.
+   */
+  int size() {
+    return inFlight.size();
+  }
+}
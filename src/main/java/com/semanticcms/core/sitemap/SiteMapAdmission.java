@@ -0,0 +1,173 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.lang.Strings;
+import com.aoapps.servlet.attribute.ScopeEE;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Limits the number of sitemaps computed at once, so that crawlers cannot take over the executors shared with
+ * regular page captures.  A request finding all permits taken is not queued, but is responded to with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, or is served an expired sitemap when one is still
+ * cached.
+ *
+ * <p>Only computations take a permit, while cached sitemaps and sitemaps computed by another request are served
+ * without one.  The sitemap index takes a single permit for all the books it computes.</p>
+ */
+final class SiteMapAdmission {
+
+  /**
+   * The context init parameter that configures the maximum number of sitemaps and sitemap indexes computed at once.
+   * Defaults to {@code 0}, which does not limit computations.
+   */
+  static final String MAX_CONCURRENT_INIT_PARAM = SiteMapAdmission.class.getName() + ".maxConcurrent";
+
+  /**
+   * The context init parameter that configures the number of seconds sent in the {@code Retry-After} header when
+   * a computation is not admitted.  Defaults to {@code 60}.
+   */
+  static final String RETRY_AFTER_INIT_PARAM = SiteMapAdmission.class.getName() + ".retryAfter";
+
+  private static final int DEFAULT_RETRY_AFTER = 60;
+
+  private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+  private static final ScopeEE.Application.Attribute<SiteMapAdmission> APPLICATION_ATTRIBUTE =
+      ScopeEE.APPLICATION.attribute(SiteMapAdmission.class.getName());
+
+  /**
+   * Set on the request holding a permit, so that computations it performs, including in concurrent subrequests, do
+   * not take another.
+   */
+  private static final ScopeEE.Request.Attribute<Boolean> ADMITTED_ATTRIBUTE =
+      ScopeEE.REQUEST.attribute(SiteMapAdmission.class.getName() + ".admitted");
+
+  /**
+   * Gets the admission control for the given servlet context, creating it on first use.
+   */
+  static SiteMapAdmission getInstance(ServletContext servletContext) {
+    return APPLICATION_ATTRIBUTE.context(servletContext).computeIfAbsent(name -> new SiteMapAdmission(servletContext));
+  }
+
+  /**
+   * Thrown when all permits are taken.
+   */
+  static final class OverloadedException extends ServletException {
+
+    private static final long serialVersionUID = 1L;
+
+    OverloadedException(String message) {
+      super(message);
+    }
+
+    OverloadedException(String message, Throwable rootCause) {
+      super(message, rootCause);
+    }
+  }
+
+  /**
+   * A permit to compute, which must be closed once computed.
+   */
+  @FunctionalInterface
+  interface Permit extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+
+  private static final Permit NO_PERMIT = () -> {
+    // Nothing to release
+  };
+
+  /**
+   * The permits or {@code null} when not limited.
+   */
+  private final Semaphore permits;
+
+  private final String retryAfter;
+
+  private SiteMapAdmission(ServletContext servletContext) {
+    String maxConcurrentParam = Strings.trimNullIfEmpty(servletContext.getInitParameter(MAX_CONCURRENT_INIT_PARAM));
+    int maxConcurrent = maxConcurrentParam == null ? 0 : Integer.parseInt(maxConcurrentParam);
+    if (maxConcurrent < 0) {
+      throw new IllegalArgumentException(MAX_CONCURRENT_INIT_PARAM + " may not be negative: " + maxConcurrent);
+    }
+    permits = maxConcurrent == 0 ? null : new Semaphore(maxConcurrent);
+    String retryAfterParam = Strings.trimNullIfEmpty(servletContext.getInitParameter(RETRY_AFTER_INIT_PARAM));
+    int retryAfterSeconds = retryAfterParam == null ? DEFAULT_RETRY_AFTER : Integer.parseInt(retryAfterParam);
+    if (retryAfterSeconds < 0) {
+      throw new IllegalArgumentException(RETRY_AFTER_INIT_PARAM + " may not be negative: " + retryAfterSeconds);
+    }
+    retryAfter = Integer.toString(retryAfterSeconds);
+  }
+
+  /**
+   * Takes a permit to compute for the given request, without waiting.  A request already holding a permit is always
+   * admitted.
+   *
+   * @return  the permit or {@code null} when all permits are taken
+   */
+  Permit tryAcquire(HttpServletRequest req) {
+    if (permits == null || Boolean.TRUE.equals(ADMITTED_ATTRIBUTE.context(req).get())) {
+      return NO_PERMIT;
+    }
+    if (!permits.tryAcquire()) {
+      return null;
+    }
+    ADMITTED_ATTRIBUTE.context(req).set(Boolean.TRUE);
+    return () -> {
+      ADMITTED_ATTRIBUTE.context(req).remove();
+      permits.release();
+    };
+  }
+
+  /**
+   * Takes a permit to compute for the given request, without waiting.
+   *
+   * @throws  OverloadedException  when all permits are taken
+   *
+   * @see  #tryAcquire(javax.servlet.http.HttpServletRequest)
+   */
+  Permit acquire(HttpServletRequest req) throws OverloadedException {
+    Permit permit = tryAcquire(req);
+    if (permit == null) {
+      throw new OverloadedException("Too many sitemaps being computed: " + req.getServletPath());
+    }
+    return permit;
+  }
+
+  /**
+   * Responds that the sitemap cannot be computed now.
+   */
+  void sendOverloaded(HttpServletResponse resp) throws IOException {
+    resp.setHeader(RETRY_AFTER_HEADER, retryAfter);
+    resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+  }
+}
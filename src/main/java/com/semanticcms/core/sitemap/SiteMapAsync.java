@@ -0,0 +1,253 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.servlet.attribute.AttributeEE;
+import com.aoapps.servlet.attribute.ScopeEE;
+import com.aoapps.servlet.subrequest.HttpServletSubRequest;
+import com.aoapps.servlet.subrequest.HttpServletSubResponse;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletRequest;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletResponse;
+import com.aoapps.tempfiles.TempFileContext;
+import com.aoapps.tempfiles.servlet.TempFileContextEE;
+import com.semanticcms.core.servlet.SemanticCMS;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Performs the work of a request on {@link SemanticCMS#getExecutors()} instead of the request thread, when
+ * {@link SiteMapServlet#ASYNC_INIT_PARAM asynchronous processing} is enabled and supported by the request.
+ *
+ * <p>The request thread is released to the container as soon as the work is submitted.  Once computed, the outcome is
+ * stored in a request attribute and the request is {@link AsyncContext#dispatch() dispatched} again, where the
+ * response is written as usual from the outcome.</p>
+ *
+ * <p>The work is performed with a subrequest, as is done for the concurrent traversals, since the request thread
+ * has returned to the container.</p>
+ */
+final class SiteMapAsync {
+
+  private static final Logger logger = Logger.getLogger(SiteMapAsync.class.getName());
+
+  /** Make no instances. */
+  private SiteMapAsync() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Computes a result.
+   */
+  @FunctionalInterface
+  interface Computation<V> {
+    V compute(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException;
+  }
+
+  /**
+   * Performs work after the response has been completed.
+   */
+  @FunctionalInterface
+  interface Task {
+    void run(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException;
+  }
+
+  /**
+   * The outcome of an asynchronous computation, held in a request attribute until the request is dispatched again.
+   */
+  static final class Outcome<V> {
+
+    private final V result;
+    private final ExecutionException thrown;
+
+    private Outcome(V result, ExecutionException thrown) {
+      this.result = result;
+      this.thrown = thrown;
+    }
+
+    /**
+     * Gets the result, or throws what the computation threw.
+     */
+    private V get() throws ServletException, IOException {
+      if (thrown != null) {
+        SingleFlight.wrapAndThrow(thrown);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Checks if asynchronous processing should be used for the given request.
+   */
+  private static boolean isEnabled(ServletContext servletContext, HttpServletRequest req) {
+    return SiteMapServlet.isAsync(servletContext) && req.isAsyncSupported();
+  }
+
+  /**
+   * Starts asynchronous processing without a timeout, since a synchronous request has none either.
+   */
+  private static AsyncContext startAsync(HttpServletRequest req) {
+    AsyncContext asyncContext = req.startAsync();
+    asyncContext.setTimeout(0);
+    return asyncContext;
+  }
+
+  /**
+   * Submits work to the unbounded executor, since it mostly waits on captures and the per-processor executor
+   * performing them.  Computations remain limited by {@link SiteMapAdmission}.
+   *
+   * @param  rejected  run on the request thread when the work cannot be submitted, such as during shutdown
+   */
+  private static void submit(ServletContext servletContext, Runnable work, Runnable rejected) {
+    try {
+      SemanticCMS.getInstance(servletContext).getExecutors().getUnbounded().submit(work);
+    } catch (IllegalStateException e) {
+      logger.log(Level.WARNING, "Unable to submit sitemap work", e);
+      rejected.run();
+    }
+  }
+
+  /**
+   * Gets the result of a computation, computing it on {@link SemanticCMS#getExecutors()} when asynchronous processing
+   * is used.
+   *
+   * @param  outcomeAttribute  holds the outcome until the request is dispatched again
+   *
+   * @return  the result, or {@code null} when being computed asynchronously, in which case the caller must return
+   *          immediately and the request will be dispatched again once computed
+   */
+  static <V> V compute(
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      ScopeEE.Request.Attribute<Outcome<V>> outcomeAttribute,
+      Computation<V> computation
+  ) throws ServletException, IOException {
+    final AttributeEE.Request<Outcome<V>> attribute = outcomeAttribute.context(req);
+    Outcome<V> outcome = attribute.get();
+    if (outcome != null) {
+      // Dispatched again once computed
+      attribute.remove();
+      return outcome.get();
+    }
+    ServletContext servletContext = req.getServletContext();
+    if (!isEnabled(servletContext, req)) {
+      return computation.compute(req, resp);
+    }
+    final HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(req);
+    final HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(resp);
+    final TempFileContext tempFileContext = TempFileContextEE.get(req);
+    final AsyncContext asyncContext = startAsync(req);
+    submit(
+        servletContext,
+        () -> {
+          Outcome<V> computed = null;
+          try {
+            HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
+            HttpServletResponse subresponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
+            computed = new Outcome<>(computation.compute(subrequest, subresponse), null);
+          } catch (ServletException | IOException | RuntimeException e) {
+            computed = new Outcome<>(null, new ExecutionException(e));
+          } finally {
+            if (computed == null) {
+              // Dispatched even on error, since there is no timeout
+              computed = new Outcome<>(null, new ExecutionException(new ServletException("Computation did not complete")));
+            }
+            attribute.set(computed);
+            asyncContext.dispatch();
+          }
+        },
+        () -> {
+          attribute.set(new Outcome<>(null, new ExecutionException(new ServletException("Executors unavailable"))));
+          asyncContext.dispatch();
+        }
+    );
+    return null;
+  }
+
+  /**
+   * Runs a task after the response has been completed, on {@link SemanticCMS#getExecutors()} when asynchronous
+   * processing is used.  Any error is logged, since the response has already been sent.
+   *
+   * @param  finished  always run once the task has finished or could not be run
+   */
+  static void runAfterResponse(
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      Task task,
+      Runnable finished
+  ) throws ServletException, IOException {
+    ServletContext servletContext = req.getServletContext();
+    if (!isEnabled(servletContext, req)) {
+      try {
+        task.run(req, resp);
+      } finally {
+        finished.run();
+      }
+      return;
+    }
+    final HttpServletRequest threadSafeReq;
+    final HttpServletResponse threadSafeResp;
+    final TempFileContext tempFileContext;
+    final AsyncContext asyncContext;
+    try {
+      threadSafeReq = new UnmodifiableCopyHttpServletRequest(req);
+      threadSafeResp = new UnmodifiableCopyHttpServletResponse(resp);
+      tempFileContext = TempFileContextEE.get(req);
+      asyncContext = startAsync(req);
+    } catch (RuntimeException e) {
+      finished.run();
+      throw e;
+    }
+    submit(
+        servletContext,
+        () -> {
+          try {
+            HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
+            HttpServletResponse subresponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
+            task.run(subrequest, subresponse);
+          } catch (ServletException | IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Sitemap work failed after response: " + threadSafeReq.getServletPath(), e);
+          } finally {
+            try {
+              finished.run();
+            } finally {
+              asyncContext.complete();
+            }
+          }
+        },
+        () -> {
+          try {
+            finished.run();
+          } finally {
+            asyncContext.complete();
+          }
+        }
+    );
+  }
+}
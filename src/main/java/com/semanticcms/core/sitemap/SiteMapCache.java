@@ -0,0 +1,842 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.lang.Strings;
+import com.aoapps.net.URIEncoder;
+import com.aoapps.servlet.attribute.ScopeEE;
+import com.aoapps.servlet.http.Canonical;
+import com.aoapps.servlet.http.HttpServletUtil;
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.SemanticCMS;
+import com.semanticcms.core.servlet.View;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Application-scoped cache of the {@link BookSiteMap} computed for each book, along with optional snapshots of the
+ * sitemap index.
+ *
+ * <p>The canonical URLs depend on the scheme, host, port, and context path of the request, so entries are kept
+ * separately for each absolute URL of the context root.</p>
+ *
+ * <p>There is no notification when the pages of a book change, so entries are only reused for
+ * {@link #TTL_INIT_PARAM} seconds, or until {@link SiteMapServlet#invalidate(javax.servlet.ServletContext, com.semanticcms.core.model.Book)}
+ * is called.  Caching is disabled by default.</p>
+ */
+final class SiteMapCache {
+
+  /**
+   * The context init parameter that configures the number of seconds a computed sitemap is reused.
+   * Defaults to {@code 0}, which disables caching.
+   */
+  static final String TTL_INIT_PARAM = SiteMapCache.class.getName() + ".ttl";
+
+  /**
+   * The context init parameter that configures the number of seconds after which a snapshot of the sitemap index
+   * is revalidated.  Defaults to {@code 0}, which computes the sitemap index on every request.
+   */
+  static final String INDEX_REFRESH_INIT_PARAM = SiteMapCache.class.getName() + ".indexRefresh";
+
+  /**
+   * The context init parameter that configures the maximum number of distinct scheme, host, port, and context path
+   * combinations for which canonical URLs, robots.txt, sitemap index snapshots, and the sitemap of each book are kept,
+   * least recently used first discarded.
+   * Defaults to {@code 100}.
+   */
+  static final String MAX_HOSTS_INIT_PARAM = SiteMapCache.class.getName() + ".maxHosts";
+
+  private static final int DEFAULT_MAX_HOSTS = 100;
+
+  /**
+   * The context init parameter that enables persisting computed sitemaps under the
+   * {@link ServletContext#TEMPDIR temporary directory} of the servlet context.  A restarted application then serves
+   * any sitemap stored within the last {@link #TTL_INIT_PARAM} seconds without first traversing the book.  Only used
+   * when caching is enabled.  At most one sitemap per book is stored for each of {@link #MAX_HOSTS_INIT_PARAM} hosts.
+   * Defaults to {@code false}.
+   */
+  static final String PERSIST_INIT_PARAM = SiteMapCache.class.getName() + ".persist";
+
+  /**
+   * The directory within the temporary directory of the servlet context.
+   */
+  static final String STORE_DIRECTORY = "semanticcms-core-sitemap";
+
+  private static final Logger logger = Logger.getLogger(SiteMapCache.class.getName());
+
+  private static final ScopeEE.Application.Attribute<SiteMapCache> APPLICATION_ATTRIBUTE =
+      ScopeEE.APPLICATION.attribute(SiteMapCache.class.getName());
+
+  /**
+   * Gets the cache for the given servlet context, creating it on first use.
+   */
+  static SiteMapCache getInstance(ServletContext servletContext) {
+    return APPLICATION_ATTRIBUTE.context(servletContext).computeIfAbsent(name -> new SiteMapCache(servletContext));
+  }
+
+  private static final class Entry {
+
+    /**
+     * The URLs by page or {@code null} when loaded from {@link SiteMapStore disk}.
+     * Guarded by this entry.
+     */
+    private final BookIndex index;
+    private volatile BookSiteMap siteMap;
+    private final long expiresNanos;
+
+    /**
+     * The pages that have changed since the sitemap was created, each with a distinct marker so that a page changed
+     * again while being updated is not lost.
+     */
+    private final ConcurrentMap<PageRef, Object> changed;
+
+    /**
+     * Creates an entry, with any pages already changed.
+     *
+     * @param  changed  the pages changed during the traversal, no defensive copy is made
+     */
+    private Entry(BookIndex index, BookSiteMap siteMap, long expiresNanos, ConcurrentMap<PageRef, Object> changed) {
+      this.index = index;
+      this.siteMap = siteMap;
+      this.expiresNanos = expiresNanos;
+      this.changed = changed;
+    }
+
+    /**
+     * Updates the index for all changed pages, then creates a new sitemap when any updated.  Each page remains changed
+     * until successfully updated, so a page that cannot be updated is never served as up-to-date.  The update is
+     * measured when there are any listeners.
+     *
+     * @return  {@code true} when up-to-date, or {@code false} when the book must be traversed again
+     */
+    private synchronized boolean update(
+        SiteMapListeners listeners,
+        ServletContext servletContext,
+        HttpServletRequest req,
+        HttpServletResponse resp,
+        SortedSet<View> views,
+        Book book
+    ) throws IOException {
+      if (index == null) {
+        return false;
+      }
+      long startNanos = listeners.isEnabled() ? System.nanoTime() : 0;
+      int updated = 0;
+      BookIndex.Changes changes = new BookIndex.Changes();
+      LongAdder viewChecks = new LongAdder();
+      try {
+        for (Map.Entry<PageRef, Object> marker : changed.entrySet()) {
+          PageRef pageRef = marker.getKey();
+          if (!SiteMapServlet.updatePage(servletContext, req, resp, views, book, index, pageRef, changes, viewChecks)) {
+            return false;
+          }
+          changed.remove(pageRef, marker.getValue());
+          updated++;
+        }
+        return true;
+      } finally {
+        if (updated != 0) {
+          // Only the shards containing changed URLs are created again
+          siteMap = siteMap.update(changes);
+          if (listeners.isEnabled()) {
+            listeners.pagesUpdated(book, System.nanoTime() - startNanos, updated, viewChecks.intValue());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The last computed locations of the sitemap index.
+   */
+  static final class IndexSnapshot {
+
+    private final SortedSet<SiteMapUrl> locs;
+    private final long refreshNanos;
+    private volatile boolean stale;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile byte[] bytes;
+    private volatile byte[] gzip;
+    private volatile String hash;
+
+    private IndexSnapshot(SortedSet<SiteMapUrl> locs, long refreshNanos) {
+      this.locs = Collections.unmodifiableSortedSet(locs);
+      this.refreshNanos = refreshNanos;
+    }
+
+    SortedSet<SiteMapUrl> getLocs() {
+      return locs;
+    }
+
+    /**
+     * Begins a refresh when this snapshot is stale and not already being refreshed.
+     *
+     * @return  {@code true} when the caller must refresh then call {@link #endRefresh()}
+     */
+    boolean tryBeginRefresh() {
+      return
+          (stale || System.nanoTime() - refreshNanos >= 0)
+              && refreshing.compareAndSet(false, true);
+    }
+
+    void endRefresh() {
+      refreshing.set(false);
+    }
+
+    /**
+     * Gets the rendered sitemap index of this snapshot, when already generated.
+     *
+     * @param  gzip  Is the gzip-compressed representation?
+     *
+     * @return  the rendered sitemap index or {@code null} when not yet generated
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    byte[] getBytes(boolean gzip) {
+      return gzip ? this.gzip : bytes;
+    }
+
+    /**
+     * Stores the rendered sitemap index of this snapshot.  Concurrent requests may each generate the same content, in
+     * which case any one is kept.
+     *
+     * @param  gzip  Is the gzip-compressed representation?
+     * @param  bytes  no defensive copy is made, the caller must not modify after this call
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    void setBytes(boolean gzip, byte[] bytes) {
+      if (gzip) {
+        this.gzip = bytes;
+      } else {
+        this.bytes = bytes;
+      }
+    }
+
+    /**
+     * Gets the strong entity tag of this snapshot, memoized.
+     *
+     * @param  gzip  Is the gzip-compressed representation?
+     *
+     * @see  SiteMapIndexServlet#getHash(javax.servlet.http.HttpServletRequest, java.util.SortedSet)
+     */
+    String getETag(HttpServletRequest req, boolean gzip) {
+      String h = hash;
+      if (h == null) {
+        h = SiteMapIndexServlet.getHash(req, locs);
+        hash = h;
+      }
+      return ETag.toETag(h, gzip);
+    }
+  }
+
+  /**
+   * A rendered robots.txt along with its strong entity tag.
+   */
+  static final class RobotsTxt {
+
+    private final byte[] bytes;
+    private final String etag;
+
+    /**
+     * Hashes the rendered robots.txt.
+     *
+     * @param  bytes  no defensive copy is made, the caller must not modify after this call
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    RobotsTxt(byte[] bytes) {
+      this.bytes = bytes;
+      MessageDigest digest = ETag.newDigest();
+      digest.update(bytes);
+      etag = ETag.toETag(ETag.getHash(digest), false);
+    }
+
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    byte[] getBytes() {
+      return bytes;
+    }
+
+    String getETag() {
+      return etag;
+    }
+  }
+
+  private final long ttlNanos;
+
+  /**
+   * The store of computed sitemaps or {@code null} when not persisted.
+   */
+  private final SiteMapStore store;
+
+  /**
+   * The time each book was last invalidated, stored sitemaps written before then are not used.
+   */
+  private final ConcurrentMap<Book, Long> bookInvalidatedMillis = new ConcurrentHashMap<>();
+
+  /**
+   * The time all books were last invalidated, stored sitemaps written before then are not used.
+   */
+  private volatile long allInvalidatedMillis;
+
+  private final long indexRefreshNanos;
+
+  private final int maxHosts;
+
+  /**
+   * Entries by book then by absolute URL of the context root.
+   * Each map by absolute URL of the context root is synchronized on access.
+   */
+  private final ConcurrentMap<Book, Map<String, Entry>> entries = new ConcurrentHashMap<>();
+
+  /**
+   * The changes made during traversals in progress.
+   */
+  private final PageChanges pageChanges = new PageChanges();
+
+  /**
+   * Traversals in progress by book and absolute URL of the context root.
+   */
+  private final SingleFlight<Map.Entry<Book, String>, BookSiteMap> bookFlights = new SingleFlight<>();
+
+  /**
+   * Sitemap indexes being found by absolute URL of the context root.
+   */
+  private final SingleFlight<String, SortedSet<SiteMapUrl>> indexFlights = new SingleFlight<>();
+
+  /**
+   * Index snapshots by absolute URL of the context root.
+   * Synchronized on access.
+   */
+  private final Map<String, IndexSnapshot> indexSnapshots;
+
+  /**
+   * Encoded canonical URLs by absolute URL of the context root then by path within the context.
+   * Synchronized on access.
+   */
+  private final Map<String, ConcurrentMap<String, String>> canonicalUrls;
+
+  /**
+   * Rendered robots.txt by absolute URL of the context root.
+   * Synchronized on access.
+   */
+  private final Map<String, RobotsTxt> robotsTxts;
+
+  private SiteMapCache(ServletContext servletContext) {
+    ttlNanos = getSecondsInitParameter(servletContext, TTL_INIT_PARAM);
+    indexRefreshNanos = getSecondsInitParameter(servletContext, INDEX_REFRESH_INIT_PARAM);
+    String maxHostsParam = Strings.trimNullIfEmpty(servletContext.getInitParameter(MAX_HOSTS_INIT_PARAM));
+    maxHosts = maxHostsParam == null ? DEFAULT_MAX_HOSTS : Integer.parseInt(maxHostsParam);
+    if (maxHosts < 1) {
+      throw new IllegalArgumentException(MAX_HOSTS_INIT_PARAM + " must be positive: " + maxHosts);
+    }
+    indexSnapshots = newHostMap(maxHosts);
+    canonicalUrls = newHostMap(maxHosts);
+    robotsTxts = newHostMap(maxHosts);
+    if (
+        ttlNanos != 0
+            && Boolean.parseBoolean(Strings.trim(servletContext.getInitParameter(PERSIST_INIT_PARAM)))
+    ) {
+      File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+      if (tempDir == null) {
+        logger.warning("No " + ServletContext.TEMPDIR + ", not persisting sitemaps");
+        store = null;
+      } else {
+        store = new SiteMapStore(
+            tempDir.toPath().resolve(STORE_DIRECTORY),
+            TimeUnit.NANOSECONDS.toMillis(ttlNanos),
+            // One per book for each host kept
+            maxHosts * Math.max(SemanticCMS.getInstance(servletContext).getBooks().size(), 1)
+        );
+      }
+    } else {
+      store = null;
+    }
+  }
+
+  /**
+   * Creates a map by absolute URL of the context root, discarding the least recently used once full.
+   * The {@code Host} header is provided by the client, so this must be bounded.
+   */
+  private static <V> Map<String, V> newHostMap(int maxHosts) {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxHosts;
+      }
+    };
+  }
+
+  /**
+   * Gets a non-negative number of seconds from a context init parameter, defaulting to zero.
+   *
+   * @return  the number of nanoseconds
+   */
+  private static long getSecondsInitParameter(ServletContext servletContext, String name) {
+    String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(name));
+    long seconds = value == null ? 0 : Long.parseLong(value);
+    if (seconds < 0) {
+      throw new IllegalArgumentException(name + " may not be negative: " + seconds);
+    }
+    return TimeUnit.SECONDS.toNanos(seconds);
+  }
+
+  /**
+   * Gets the key for request-dependent entries.
+   */
+  private static String getRootUrl(HttpServletRequest req) {
+    return HttpServletUtil.getAbsoluteURL(req, "/");
+  }
+
+  /**
+   * Gets the sitemap for the given book, computing it when not cached or expired.  When only some pages have
+   * {@link #invalidate(com.semanticcms.core.model.PageRef) changed}, only those pages are captured again.
+   *
+   * <p>Concurrent requests for the same book and absolute URL of the context root, such as from multiple crawlers,
+   * await a single traversal of the book, whether caching is enabled or not.</p>
+   *
+   * <p>Each traversal and each update of changed pages takes a {@link SiteMapAdmission permit}.  When none is
+   * available, the cached sitemap is returned without the changes, or an expired sitemap is returned when still cached.
+   * The changes remain to be applied by a later request.</p>
+   *
+   * @throws  SiteMapAdmission.OverloadedException  when too many sitemaps are being computed and none is cached
+   */
+  BookSiteMap getBookSiteMap(
+      ServletContext servletContext,
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      SortedSet<View> views,
+      Book book
+  ) throws ServletException, IOException {
+    return getBookSiteMap(servletContext, req, resp, views, book, true);
+  }
+
+  /**
+   * Gets the sitemap for the given book, computing it when not cached or expired.
+   *
+   * @param  mayWait  may wait on a traversal in progress by another request?  Must be {@code false} on a thread of
+   *                  {@link SiteMapTasks}, since the traversal may be waiting on the same executor.
+   *
+   * @see  #getBookSiteMap(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.util.SortedSet, com.semanticcms.core.model.Book)
+   * @see  SingleFlight#get(java.lang.Object, java.util.concurrent.Callable, java.lang.Runnable, boolean)
+   */
+  @SuppressWarnings("try")
+  BookSiteMap getBookSiteMap(
+      ServletContext servletContext,
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      SortedSet<View> views,
+      Book book,
+      boolean mayWait
+  ) throws ServletException, IOException {
+    SiteMapListeners listeners = SiteMapListeners.getInstance(servletContext);
+    String rootUrl = getRootUrl(req);
+    Runnable joined = listeners.isEnabled() ? () -> listeners.coalesced(book) : null;
+    SiteMapAdmission admission = SiteMapAdmission.getInstance(servletContext);
+    if (ttlNanos == 0) {
+      return bookFlights.get(
+          Map.entry(book, rootUrl),
+          () -> {
+            try (SiteMapAdmission.Permit permit = admission.acquire(req)) {
+              // Never cached
+              listeners.cacheMiss(book);
+              return SiteMapServlet.createBookSiteMap(
+                  createBookIndex(listeners, servletContext, req, resp, views, book).getUrls()
+              );
+            }
+          },
+          joined,
+          mayWait
+      );
+    }
+    Map<String, Entry> bookEntries = entries.computeIfAbsent(book, b -> newHostMap(maxHosts));
+    Entry entry = getEntry(bookEntries, rootUrl);
+    if (entry == null && store != null) {
+      entry = load(book, rootUrl, views);
+      if (entry != null) {
+        synchronized (bookEntries) {
+          bookEntries.putIfAbsent(rootUrl, entry);
+        }
+      }
+    }
+    if (entry != null && System.nanoTime() - entry.expiresNanos < 0) {
+      if (entry.changed.isEmpty()) {
+        listeners.cacheHit(book);
+        return entry.siteMap;
+      }
+      BookSiteMap oldSiteMap = entry.siteMap;
+      long updateMillis = System.currentTimeMillis();
+      SiteMapAdmission.Permit permit = admission.tryAcquire(req);
+      if (permit == null) {
+        // Serve without the changes instead of none
+        listeners.cacheHit(book);
+        return oldSiteMap;
+      }
+      boolean upToDate;
+      try {
+        upToDate = entry.update(listeners, servletContext, req, resp, views, book);
+      } finally {
+        permit.close();
+      }
+      if (upToDate) {
+        listeners.cacheHit(book);
+        BookSiteMap siteMap = entry.siteMap;
+        if (siteMap != oldSiteMap && entry.changed.isEmpty()) {
+          persist(book, rootUrl, views, siteMap, updateMillis);
+        }
+        return siteMap;
+      }
+    }
+    final Entry missed = entry;
+    try {
+      return bookFlights.get(
+          Map.entry(book, rootUrl),
+          () -> {
+            Entry current = getEntry(bookEntries, rootUrl);
+            if (
+                current != null
+                    && current != missed
+                    && System.nanoTime() - current.expiresNanos < 0
+                    && current.changed.isEmpty()
+            ) {
+              // Replaced by a traversal that completed since the lookup
+              listeners.cacheHit(book);
+              return current.siteMap;
+            }
+            try (SiteMapAdmission.Permit permit = admission.acquire(req)) {
+              listeners.cacheMiss(book);
+              long traversalMillis = System.currentTimeMillis();
+              PageChanges.Traversal traversal = pageChanges.begin(book);
+              try {
+                BookIndex index = createBookIndex(listeners, servletContext, req, resp, views, book);
+                BookSiteMap siteMap = SiteMapServlet.createBookSiteMap(index.getUrls());
+                if (traversal.isInvalidated()) {
+                  // The book changed during the traversal, which may have found its old pages
+                  return siteMap;
+                }
+                // Pages changed during the traversal are updated on the next request
+                Entry computed = new Entry(index, siteMap, System.nanoTime() + ttlNanos, traversal.getChanged());
+                synchronized (bookEntries) {
+                  bookEntries.put(rootUrl, computed);
+                }
+                if (computed.changed.isEmpty()) {
+                  // Not stored when already out-of-date
+                  persist(book, rootUrl, views, siteMap, traversalMillis);
+                }
+                return siteMap;
+              } finally {
+                // Only once cached, so any change in-between is recorded in either
+                pageChanges.end(traversal);
+              }
+            }
+          },
+          joined,
+          mayWait
+      );
+    } catch (SiteMapAdmission.OverloadedException e) {
+      if (missed == null) {
+        throw e;
+      }
+      // Serve the expired sitemap instead of none
+      return missed.siteMap;
+    }
+  }
+
+  /**
+   * Gets the sitemap for the given book only when cached, unexpired, and without changed pages, so it may be served
+   * without any computation.
+   *
+   * @return  the sitemap or {@code null} when it must be computed by
+   *          {@link #getBookSiteMap(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.util.SortedSet, com.semanticcms.core.model.Book)}
+   */
+  BookSiteMap getCachedBookSiteMap(ServletContext servletContext, HttpServletRequest req, Book book) {
+    if (ttlNanos == 0) {
+      return null;
+    }
+    Map<String, Entry> bookEntries = entries.get(book);
+    Entry entry = bookEntries == null ? null : getEntry(bookEntries, getRootUrl(req));
+    if (entry == null || System.nanoTime() - entry.expiresNanos >= 0 || !entry.changed.isEmpty()) {
+      return null;
+    }
+    SiteMapListeners.getInstance(servletContext).cacheHit(book);
+    return entry.siteMap;
+  }
+
+  private static Entry getEntry(Map<String, Entry> bookEntries, String rootUrl) {
+    synchronized (bookEntries) {
+      return bookEntries.get(rootUrl);
+    }
+  }
+
+  /**
+   * Traverses a book, measuring the traversal when there are any listeners.
+   */
+  private static BookIndex createBookIndex(
+      SiteMapListeners listeners,
+      ServletContext servletContext,
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      SortedSet<View> views,
+      Book book
+  ) throws ServletException, IOException {
+    LongAdder viewChecks = new LongAdder();
+    if (!listeners.isEnabled()) {
+      return SiteMapServlet.createBookIndex(servletContext, req, resp, views, book, viewChecks);
+    }
+    long startNanos = System.nanoTime();
+    BookIndex index = SiteMapServlet.createBookIndex(servletContext, req, resp, views, book, viewChecks);
+    listeners.bookTraversed(
+        book,
+        System.nanoTime() - startNanos,
+        index.getPageCount(),
+        viewChecks.intValue(),
+        index.getUrlCount(),
+        index.getUrlsWithoutLastmodCount()
+    );
+    return index;
+  }
+
+  /**
+   * Loads a sitemap from the store, when computed within the time-to-live and not since invalidated.
+   *
+   * @return  the entry or {@code null} when not usable
+   */
+  private Entry load(Book book, String rootUrl, SortedSet<View> views) throws IOException {
+    SiteMapStore.Stored stored = store.read(book.getName(), rootUrl, views);
+    if (stored == null) {
+      return null;
+    }
+    // Computed before invalidated, so may not include the changes
+    long computedMillis = stored.getComputedMillis();
+    Long invalidatedMillis = bookInvalidatedMillis.get(book);
+    if (
+        computedMillis <= allInvalidatedMillis
+            || (invalidatedMillis != null && computedMillis <= invalidatedMillis)
+    ) {
+      return null;
+    }
+    long remainingNanos = ttlNanos - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - computedMillis);
+    if (remainingNanos <= 0 || remainingNanos > ttlNanos) {
+      // Expired or computed in the future
+      return null;
+    }
+    return new Entry(
+        null,
+        SiteMapServlet.createBookSiteMap(stored.getUrls()),
+        System.nanoTime() + remainingNanos,
+        new ConcurrentHashMap<>()
+    );
+  }
+
+  /**
+   * Stores a sitemap, when persisted.
+   *
+   * @param  computedMillis  the time the computation of the sitemap began
+   */
+  private void persist(Book book, String rootUrl, SortedSet<View> views, BookSiteMap siteMap, long computedMillis) {
+    if (store != null) {
+      store.write(book.getName(), rootUrl, views, siteMap.getUrls(), computedMillis);
+    }
+  }
+
+  /**
+   * Checks if per-book sitemaps are cached.
+   *
+   * @see  #TTL_INIT_PARAM
+   */
+  boolean isEnabled() {
+    return ttlNanos != 0;
+  }
+
+  boolean isIndexRefreshEnabled() {
+    return indexRefreshNanos != 0;
+  }
+
+  /**
+   * Finds the sitemap locations of the sitemap index.  Concurrent requests for the same absolute URL of the context
+   * root await a single search, which takes a single {@link SiteMapAdmission permit} for all books.
+   *
+   * @return  the locations, shared by all awaiting requests, which must not be modified
+   *
+   * @throws  SiteMapAdmission.OverloadedException  when too many sitemaps are being computed
+   */
+  @SuppressWarnings("try")
+  SortedSet<SiteMapUrl> findLocs(HttpServletRequest req, Callable<SortedSet<SiteMapUrl>> findLocs)
+      throws ServletException, IOException {
+    SiteMapAdmission admission = SiteMapAdmission.getInstance(req.getServletContext());
+    return indexFlights.get(
+        getRootUrl(req),
+        () -> {
+          try (SiteMapAdmission.Permit permit = admission.acquire(req)) {
+            return findLocs.call();
+          }
+        },
+        null
+    );
+  }
+
+  /**
+   * Gets the last snapshot of the sitemap index for the given request.
+   *
+   * @return  the snapshot or {@code null} when none yet computed
+   */
+  IndexSnapshot getIndexSnapshot(HttpServletRequest req) {
+    String rootUrl = getRootUrl(req);
+    synchronized (indexSnapshots) {
+      return indexSnapshots.get(rootUrl);
+    }
+  }
+
+  /**
+   * Replaces the snapshot of the sitemap index for the given request.
+   *
+   * @param  locs  no defensive copy is made, the caller must not modify after this call
+   *
+   * @return  the new snapshot
+   */
+  IndexSnapshot setIndexSnapshot(HttpServletRequest req, SortedSet<SiteMapUrl> locs) {
+    IndexSnapshot snapshot = new IndexSnapshot(locs, System.nanoTime() + indexRefreshNanos);
+    String rootUrl = getRootUrl(req);
+    synchronized (indexSnapshots) {
+      indexSnapshots.put(rootUrl, snapshot);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Gets the rendered robots.txt for the given request.
+   *
+   * @return  the rendered robots.txt or {@code null} when not yet rendered
+   */
+  RobotsTxt getRobotsTxt(HttpServletRequest req) {
+    String rootUrl = getRootUrl(req);
+    synchronized (robotsTxts) {
+      return robotsTxts.get(rootUrl);
+    }
+  }
+
+  /**
+   * Stores the rendered robots.txt for the given request.  It does not depend on the pages of any book, so is kept
+   * whether caching is enabled or not, and is not invalidated.
+   */
+  void setRobotsTxt(HttpServletRequest req, RobotsTxt robotsTxt) {
+    String rootUrl = getRootUrl(req);
+    synchronized (robotsTxts) {
+      robotsTxts.put(rootUrl, robotsTxt);
+    }
+  }
+
+  /**
+   * Gets the canonical URL for the given path within the context, encoded to RFC 3986 US-ASCII.  The URL only
+   * depends on the scheme, host, port, and context path, so it is built once for each.
+   *
+   * @param  path  the path within the context, not yet encoded
+   */
+  String getCanonicalUrl(HttpServletRequest req, HttpServletResponse resp, String path) {
+    String rootUrl = getRootUrl(req);
+    ConcurrentMap<String, String> hostUrls;
+    synchronized (canonicalUrls) {
+      hostUrls = canonicalUrls.computeIfAbsent(rootUrl, k -> new ConcurrentHashMap<>());
+    }
+    return hostUrls.computeIfAbsent(
+        path,
+        p -> URIEncoder.encodeURI(// Encode again to force RFC 3986 US-ASCII
+            Canonical.encodeCanonicalURL(
+                resp,
+                HttpServletUtil.getAbsoluteURL(
+                    req,
+                    URIEncoder.encodeURI(p)
+                )
+            )
+        )
+    );
+  }
+
+  private void markIndexSnapshotsStale() {
+    synchronized (indexSnapshots) {
+      for (IndexSnapshot snapshot : indexSnapshots.values()) {
+        snapshot.stale = true;
+      }
+    }
+  }
+
+  /**
+   * Discards all cached sitemaps for the given book.
+   * Any sitemap index snapshot is revalidated on its next request.
+   */
+  void invalidate(Book book) {
+    bookInvalidatedMillis.put(book, System.currentTimeMillis());
+    pageChanges.bookChanged(book);
+    entries.remove(book);
+    markIndexSnapshotsStale();
+  }
+
+  /**
+   * Marks the given page as changed in all cached sitemaps of its book, including those being computed.
+   * Any sitemap index snapshot is revalidated on its next request.
+   */
+  void invalidate(PageRef pageRef) {
+    Book book = pageRef.getBook();
+    // Stored sitemaps do not have the URLs by page, so cannot be updated incrementally
+    bookInvalidatedMillis.put(book, System.currentTimeMillis());
+    pageChanges.pageChanged(pageRef);
+    Map<String, Entry> bookEntries = entries.get(book);
+    if (bookEntries != null) {
+      synchronized (bookEntries) {
+        for (Entry entry : bookEntries.values()) {
+          entry.changed.put(pageRef, new Object());
+        }
+      }
+    }
+    markIndexSnapshotsStale();
+  }
+
+  /**
+   * Discards all cached sitemaps.
+   * Any sitemap index snapshot is revalidated on its next request.
+   */
+  void invalidateAll() {
+    allInvalidatedMillis = System.currentTimeMillis();
+    pageChanges.allChanged();
+    entries.clear();
+    markIndexSnapshotsStale();
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the sitemap index and the sitemaps of all books at build time, to be included in the web application in
+ * {@link StaticSiteMaps#DIRECTORY}.  Once included, they are served as-is by {@link SiteMapIndexServlet} and
+ * {@link SiteMapServlet}, without any traversal of the books.
+ *
+ * <p>Pages are captured by dispatching to them, which requires a servlet container.  The sitemaps are therefore
+ * requested from a running instance of the web application, such as one started by the build for integration tests.
+ * Since the sitemaps contain absolute URLs, the instance should be accessed at the same scheme, host, port, and
+ * context path as will be served in production.</p>
+ *
+ * <p>Both the plain and gzip-compressed forms are generated.  Sitemaps of other hosts, such as those found in
+ * <code>META-INF/sitemap-index.xml</code> of JARs, are left as-is.</p>
+ *
+ * <p>Usage: <code>java com.semanticcms.core.sitemap.SiteMapGenerator <i>rootUrl</i> <i>directory</i></code>, such
+ * as from the <code>exec-maven-plugin</code>.</p>
+ */
+public final class SiteMapGenerator {
+
+  /** Make no instances. */
+  private SiteMapGenerator() {
+    throw new AssertionError();
+  }
+
+  private static final Logger logger = Logger.getLogger(SiteMapGenerator.class.getName());
+
+  private static final String GZIP_EXTENSION = ".gz";
+
+  /**
+   * Matches each location in the sitemap index, as written by {@link SiteMapWriter}.
+   */
+  private static final Pattern LOC_PATTERN = Pattern.compile("<loc>([^<]*)</loc>");
+
+  private static final String PAGE_QUERY = SiteMapServlet.PAGE_PARAM + '=';
+
+  /**
+   * Reverses the escaping of {@link SiteMapWriter}.
+   */
+  private static String decodeXml(String text) {
+    return text.replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+  }
+
+  private static byte[] fetch(URI uri) throws IOException {
+    logger.log(Level.FINE, "Fetching {0}", uri);
+    URLConnection conn = uri.toURL().openConnection();
+    conn.setUseCaches(false);
+    if (conn instanceof HttpURLConnection) {
+      int status = ((HttpURLConnection) conn).getResponseCode();
+      if (status != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Unexpected status " + status + ": " + uri);
+      }
+    }
+    try (InputStream in = conn.getInputStream()) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static void write(Path directory, String path, byte[] bytes) throws IOException {
+    Path file = directory.resolve(path.substring(1)).normalize();
+    if (!file.startsWith(directory)) {
+      throw new IOException("Path outside of directory: " + path);
+    }
+    Files.createDirectories(file.getParent());
+    Files.write(file, bytes);
+    logger.log(Level.INFO, "Wrote {0}", file);
+  }
+
+  /**
+   * Fetches both the plain and gzip-compressed forms of a sitemap or sitemap index.
+   *
+   * @param  servletPath  the servlet path of the plain form
+   * @param  page  the value of {@link SiteMapServlet#PAGE_PARAM} or {@code null} for none
+   *
+   * @return  the plain form
+   */
+  private static byte[] generate(URI root, Path directory, String servletPath, String page) throws IOException {
+    String query = page == null ? "" : ('?' + PAGE_QUERY + page);
+    byte[] plain = fetch(root.resolve(servletPath.substring(1) + query));
+    write(directory, StaticSiteMaps.getPath(servletPath, page), plain);
+    String gzipPath = servletPath + GZIP_EXTENSION;
+    write(directory, StaticSiteMaps.getPath(gzipPath, page), fetch(root.resolve(gzipPath.substring(1) + query)));
+    return plain;
+  }
+
+  /**
+   * Generates the sitemap index and all sitemaps of the books it contains.
+   *
+   * @param  rootUrl  the absolute URL of the context root of a running instance of the web application
+   * @param  directory  the directory to write to, which is included in the web application as
+   *                    {@link StaticSiteMaps#DIRECTORY}
+   *
+   * @return  the number of sitemaps generated, not including the sitemap index
+   */
+  public static int generate(String rootUrl, Path directory) throws IOException {
+    if (!rootUrl.endsWith("/")) {
+      rootUrl += '/';
+    }
+    URI root;
+    try {
+      root = new URI(rootUrl);
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
+    String contextPath = root.getPath();
+    contextPath = contextPath.substring(0, contextPath.length() - 1);
+    directory = directory.toAbsolutePath().normalize();
+
+    String index = new String(
+        generate(root, directory, SiteMapIndexServlet.SERVLET_PATH, null),
+        SiteMapWriter.ENCODING
+    );
+    // The same sitemap may be listed once per page
+    Set<String> locs = new LinkedHashSet<>();
+    Matcher matcher = LOC_PATTERN.matcher(index);
+    while (matcher.find()) {
+      locs.add(decodeXml(matcher.group(1).trim()));
+    }
+    int count = 0;
+    for (String loc : locs) {
+      if (loc.startsWith(rootUrl)) {
+        URI uri;
+        try {
+          uri = new URI(loc);
+        } catch (URISyntaxException e) {
+          throw new IOException(e);
+        }
+        String servletPath = uri.getPath().substring(contextPath.length());
+        if (servletPath.endsWith(SiteMapServlet.GZIP_SERVLET_PATH)) {
+          String query = uri.getQuery();
+          String page = query != null && query.startsWith(PAGE_QUERY) ? query.substring(PAGE_QUERY.length()) : null;
+          generate(
+              root,
+              directory,
+              servletPath.substring(0, servletPath.length() - GZIP_EXTENSION.length()),
+              page
+          );
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Generates the sitemaps from the command line.
+   *
+   * @param  args  the absolute URL of the context root followed by the directory to write to
+   */
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("usage: " + SiteMapGenerator.class.getName() + " rootUrl directory");
+      System.exit(1);
+    }
+    int count = generate(args[0], Paths.get(args[1]));
+    System.out.println("Generated " + count + (count == 1 ? " sitemap" : " sitemaps"));
+  }
+}
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
- * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024, 2025  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,15 +23,13 @@
 
 package com.semanticcms.core.sitemap;
 
-import static com.aoapps.encoding.TextInXhtmlEncoder.encodeTextInXhtml;
-import static com.aoapps.encoding.TextInXhtmlEncoder.textInXhtmlEncoder;
-
+import com.aoapps.lang.Strings;
+import com.aoapps.lang.attribute.Attribute;
 import com.aoapps.lang.concurrent.ExecutionExceptions;
 import com.aoapps.lang.io.ContentType;
 import com.aoapps.net.URIEncoder;
 import com.aoapps.servlet.attribute.AttributeEE;
 import com.aoapps.servlet.attribute.ScopeEE;
-import com.aoapps.servlet.http.Canonical;
 import com.aoapps.servlet.http.HttpServletUtil;
 import com.aoapps.servlet.subrequest.HttpServletSubRequest;
 import com.aoapps.servlet.subrequest.HttpServletSubResponse;
@@ -41,39 +39,34 @@ import com.aoapps.tempfiles.TempFileContext;
 import com.aoapps.tempfiles.servlet.TempFileContextEE;
 import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.Page;
-import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.servlet.CaptureLevel;
 import com.semanticcms.core.servlet.CapturePage;
 import com.semanticcms.core.servlet.ConcurrencyCoordinator;
 import com.semanticcms.core.servlet.SemanticCMS;
 import com.semanticcms.core.servlet.View;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.SortedSet;
-import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -84,13 +77,16 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.exception.UncheckedException;
-import org.joda.time.DateTime;
+import org.apache.commons.lang3.exception.UncheckedInterruptedException;
 import org.joda.time.ReadableInstant;
 
 /**
  * Creates a site map index of all per-book sitemaps.
  */
-@WebServlet(SiteMapIndexServlet.SERVLET_PATH)
+@WebServlet(
+    value = {SiteMapIndexServlet.SERVLET_PATH, SiteMapIndexServlet.GZIP_SERVLET_PATH},
+    asyncSupported = true
+)
 public class SiteMapIndexServlet extends HttpServlet {
 
   private static final long serialVersionUID = 1L;
@@ -106,101 +102,151 @@ public class SiteMapIndexServlet extends HttpServlet {
   // Note: Matches ao-ant-tasks:GenerateJavadocSitemap.java:SITEMAP_INDEX_NAME (but with a slash)
   public static final String SERVLET_PATH = "/sitemap-index.xml";
 
-  // Note: Matches ao-ant-tasks:GenerateJavadocSitemap.java:META_INF_DIRECTORY + SITEMAP_INDEX_NAME (but with a slash)
-  private static final String META_INF_SITEMAP_INDEX_NAME = "/META-INF" + SERVLET_PATH;
+  /**
+   * The gzip-compressed form of the sitemap index.
+   */
+  public static final String GZIP_SERVLET_PATH = SERVLET_PATH + ".gz";
 
   private static final String CONTENT_TYPE = ContentType.XML;
 
-  // Note: Matches ao-ant-tasks:SeoJavadocFilter.java:ENCODING
-  private static final Charset ENCODING = StandardCharsets.UTF_8;
-
-  private static final String SITEMAP_OPEN = "<sitemap>";
-
-  private static final String SITEMAP_CLOSE = "</sitemap>";
-
-  private static final String LOC_OPEN = "<loc>";
+  private static final byte[] HEADER = SiteMapWriter.createHeader(
+      GENERATED_COMMENT,
+      "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+  );
 
-  private static final String LOC_CLOSE = "</loc>";
-
-  private static final String LASTMOD_OPEN = "<lastmod>";
-
-  private static final String LASTMOD_CLOSE = "</lastmod>";
+  private static final byte[] FOOTER = SiteMapWriter.createFooter("sitemapindex");
 
   /**
    * Scans for additional sitemaps in <code>META-INF/sitemap-index.xml</code> of all JARs on application start-up.
+   *
+   * @see  #SCAN_INIT_PARAM
    */
   @WebListener("Scans for additional sitemaps in META-INF/sitemap-index.xml of all JARs on application start-up.")
   public static class JarSitemapIndexInitializer implements ServletContextListener {
 
-    private static final ScopeEE.Application.Attribute<SortedSet<SiteMapUrl>> JAR_SITEMAP_INDEXES =
+    private static final ScopeEE.Application.Attribute<FutureTask<SortedSet<SiteMapUrl>>> JAR_SITEMAP_INDEXES =
         ScopeEE.APPLICATION.attribute(JarSitemapIndexInitializer.class.getName() + ".jarSitemapIndexes");
 
+    /**
+     * The context init parameter that enables caching the sitemaps parsed from each JAR under the
+     * {@link ServletContext#TEMPDIR temporary directory} of the servlet context.  A JAR unchanged since the sitemaps
+     * were cached is not parsed again on the next start-up.
+     */
+    public static final String CACHE_INIT_PARAM = JarSitemapIndexInitializer.class.getName() + ".cache";
+
+    /**
+     * The context init parameter that selects when JARs are scanned:
+     * <dl>
+     *   <dt>{@link #SCAN_STARTUP}</dt>
+     *   <dd>During application start-up, which fails on any error.  This is the default.</dd>
+     *   <dt>{@link #SCAN_BACKGROUND}</dt>
+     *   <dd>By a background thread started during application start-up.</dd>
+     *   <dt>{@link #SCAN_LAZY}</dt>
+     *   <dd>By the first request for the sitemap index.</dd>
+     * </dl>
+     * When not scanned during start-up, the sitemap index waits for the scan to complete, and any error is reported by
+     * each request for the sitemap index.
+     */
+    public static final String SCAN_INIT_PARAM = JarSitemapIndexInitializer.class.getName() + ".scan";
+
+    public static final String SCAN_STARTUP = "startup";
+
+    public static final String SCAN_BACKGROUND = "background";
+
+    public static final String SCAN_LAZY = "lazy";
+
     @Override
     public void contextInitialized(ServletContextEvent event) {
-      try {
-        SortedSet<SiteMapUrl> jarSitemapIndexes = new TreeSet<>();
-        ClassLoader cl = Thread.currentThread().getContextClassLoader();
-        if (cl == null) {
-          cl = ClassLoader.getSystemClassLoader();
+      ServletContext servletContext = event.getServletContext();
+      String scan = Strings.trimNullIfEmpty(servletContext.getInitParameter(SCAN_INIT_PARAM));
+      if (scan == null) {
+        scan = SCAN_STARTUP;
+      } else if (!SCAN_STARTUP.equals(scan) && !SCAN_BACKGROUND.equals(scan) && !SCAN_LAZY.equals(scan)) {
+        throw new IllegalArgumentException(
+            SCAN_INIT_PARAM + " must be one of " + SCAN_STARTUP + ", " + SCAN_BACKGROUND + ", or " + SCAN_LAZY + ": "
+                + scan
+        );
+      }
+      Path cacheFile = null;
+      if (Boolean.parseBoolean(Strings.trim(servletContext.getInitParameter(CACHE_INIT_PARAM)))) {
+        File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+        if (tempDir == null) {
+          logger.warning("No " + ServletContext.TEMPDIR + ", not caching sitemap indexes");
+        } else {
+          cacheFile = tempDir.toPath().resolve(SiteMapCache.STORE_DIRECTORY).resolve(JarSitemapIndexes.CACHE_FILE);
         }
-        Enumeration<URL> sitemapIndexResources = cl.getResources(META_INF_SITEMAP_INDEX_NAME);
-        while (sitemapIndexResources.hasMoreElements()) {
-          URL url = sitemapIndexResources.nextElement();
-          URLConnection conn = url.openConnection();
-          conn.setUseCaches(false);
-          int count = 0;
-          try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), ENCODING))) {
-            String loc = null;
-            ReadableInstant lastmod = null;
-            String line;
-            while ((line = in.readLine()) != null) {
-              line = line.trim();
-              if (line.startsWith(LOC_OPEN)) {
-                if (!line.endsWith(LOC_CLOSE)) {
-                  throw new ParseException("No " + LOC_CLOSE + " after " + LOC_OPEN, 0);
-                }
-                loc = line.substring(LOC_OPEN.length(), line.length() - LOC_CLOSE.length());
-              } else if (line.startsWith(LASTMOD_OPEN)) {
-                if (!line.endsWith(LASTMOD_CLOSE)) {
-                  throw new ParseException("No " + LASTMOD_CLOSE + " after " + LASTMOD_OPEN, 0);
-                }
-                lastmod = new DateTime(line.substring(LASTMOD_OPEN.length(), line.length() - LASTMOD_CLOSE.length()));
-              } else if (line.startsWith(SITEMAP_CLOSE)) {
-                if (loc == null) {
-                  throw new ParseException("No " + LOC_OPEN + " before " + SITEMAP_CLOSE, 0);
-                }
-                if (lastmod == null) {
-                  throw new ParseException("No " + LASTMOD_OPEN + " before " + SITEMAP_CLOSE, 0);
-                }
-                jarSitemapIndexes.add(new SiteMapUrl(true, loc, lastmod));
-                count++;
-                loc = null;
-                lastmod = null;
-              }
-            }
+      }
+      // Resolved now, since a background thread or request thread may have a different context class loader
+      ClassLoader cl = Thread.currentThread().getContextClassLoader();
+      if (cl == null) {
+        cl = ClassLoader.getSystemClassLoader();
+      }
+      final JarSitemapIndexes jarSitemapIndexes = new JarSitemapIndexes(cacheFile);
+      final ClassLoader scanClassLoader = cl;
+      FutureTask<SortedSet<SiteMapUrl>> task = new FutureTask<>(() -> jarSitemapIndexes.scan(scanClassLoader));
+      JAR_SITEMAP_INDEXES.context(servletContext).set(task);
+      if (SCAN_STARTUP.equals(scan)) {
+        task.run();
+        try {
+          task.get();
+        } catch (InterruptedException e) {
+          // Restore the interrupted status
+          Thread.currentThread().interrupt();
+          throw new UncheckedInterruptedException(e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw new UncheckedIOException((IOException) cause);
           }
-          logger.log(Level.INFO, "Found sitemap index at {0} containing {1} {2}",
-              new Object[]{url, count, count == 1 ? "sitemap" : "sitemaps"});
+          if (cause instanceof InterruptedException) {
+            // Restore the interrupted status
+            Thread.currentThread().interrupt();
+            throw new UncheckedInterruptedException((InterruptedException) cause);
+          }
+          throw new UncheckedException(e);
         }
-        JAR_SITEMAP_INDEXES.context(event.getServletContext()).set(jarSitemapIndexes);
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
-      } catch (ParseException e) {
-        throw new UncheckedException(e);
+      } else if (SCAN_BACKGROUND.equals(scan)) {
+        Thread thread = new Thread(task, JarSitemapIndexInitializer.class.getName());
+        thread.setDaemon(true);
+        thread.start();
+      } else {
+        assert SCAN_LAZY.equals(scan);
       }
     }
 
-    private static SortedSet<SiteMapUrl> getJarSitemapIndexes(ServletContext servletContext) throws ServletException {
-      SortedSet<SiteMapUrl> jarSitemapIndexes = JAR_SITEMAP_INDEXES.context(servletContext).get();
-      if (jarSitemapIndexes == null) {
+    /**
+     * Gets the sitemaps of all JARs, scanning now when not yet scanned or waiting for a scan in progress.
+     */
+    private static SortedSet<SiteMapUrl> getJarSitemapIndexes(ServletContext servletContext)
+        throws ServletException, IOException {
+      FutureTask<SortedSet<SiteMapUrl>> task = JAR_SITEMAP_INDEXES.context(servletContext).get();
+      if (task == null) {
         throw new ServletException(JarSitemapIndexInitializer.class.getName() + " not initialized");
       }
-      return jarSitemapIndexes;
+      // Does nothing when already run or running
+      task.run();
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        throw new ServletException(e);
+      } catch (ExecutionException e) {
+        // Maintain expected exception types while not losing stack trace
+        ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+        throw new ServletException(e);
+      } catch (CancellationException e) {
+        throw new ServletException(e);
+      }
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent event) {
-      // Nothing to do
+      FutureTask<SortedSet<SiteMapUrl>> task = JAR_SITEMAP_INDEXES.context(event.getServletContext()).get();
+      if (task != null) {
+        // Stops any background scan still in progress
+        task.cancel(true);
+      }
     }
   }
 
@@ -213,33 +259,93 @@ public class SiteMapIndexServlet extends HttpServlet {
       ScopeEE.REQUEST.attribute(SiteMapIndexServlet.class.getName() + ".locs");
 
   /**
-   * Checks if the sitemap has at least one page.
-   * This version implemented as a traversal.
+   * The snapshot the sitemap locations were taken from, if any.
+   * This is used to generate the gzip-compressed sitemap index once per snapshot.
+   */
+  private static final ScopeEE.Request.Attribute<SiteMapCache.IndexSnapshot> SNAPSHOT_ATTRIBUTE =
+      ScopeEE.REQUEST.attribute(SiteMapIndexServlet.class.getName() + ".snapshot");
+
+  /**
+   * The sitemap locations found asynchronously, until the request is dispatched again.
+   *
+   * @see  SiteMapServlet#ASYNC_INIT_PARAM
+   */
+  private static final ScopeEE.Request.Attribute<SiteMapAsync.Outcome<SortedSet<SiteMapUrl>>> LOCS_OUTCOME_ATTRIBUTE =
+      ScopeEE.REQUEST.attribute(SiteMapIndexServlet.class.getName() + ".locsOutcome");
+
+  /**
+   * Adds the per-book sitemap when it has at least one URL.  When the sitemap is split into multiple pages, each page
+   * is added with its own last modified time.  The gzip-compressed sitemaps are referenced.
+   */
+  private static void addLoc(SortedSet<SiteMapUrl> locs, Book book, BookSiteMap siteMap) {
+    if (!siteMap.isEmpty()) {
+      String sitemapPath = book.getPathPrefix() + SiteMapServlet.GZIP_SERVLET_PATH;
+      List<BookSiteMap.Shard> shards = siteMap.getShards();
+      int numShards = shards.size();
+      if (numShards == 1) {
+        locs.add(
+            new SiteMapUrl(
+                false,
+                sitemapPath,
+                siteMap.getLastModified()
+            )
+        );
+      } else {
+        for (int i = 0; i < numShards; i++) {
+          locs.add(
+              new SiteMapUrl(
+                  false,
+                  sitemapPath + '?' + SiteMapServlet.PAGE_PARAM + '=' + (i + 1),
+                  shards.get(i).getLastModified()
+              )
+          );
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the single location of the per-book sitemap when {@link SiteMapServlet#STREAMING_INIT_PARAM streaming}.
+   * The URLs of the book are neither created nor sorted: the traversal only checks that at least one view of one page
+   * is applicable and accessible to the search engines, while finding the most recent last modified time.  It stops at
+   * the first applicable view without a last modified time, since the last modified of the book is then unknown.
+   *
+   * @return  the location or {@code null} when the book has no URLs
    */
-  private static boolean hasSiteMapUrl(
+  private static SiteMapUrl findStreamingLoc(
       final ServletContext servletContext,
       final HttpServletRequest req,
       final HttpServletResponse resp,
       final SortedSet<View> views,
-      final Book book,
-      PageRef pageRef
+      final Book book
   ) throws ServletException, IOException {
+    final boolean[] found = {false};
+    final ReadableInstant[] lastModified = {null};
     @SuppressWarnings("Convert2Lambda") // Cannot put @SuppressFBWarnings on lambda
-    Boolean result = CapturePage.traversePagesAnyOrder(servletContext,
+    Boolean unknown = CapturePage.traversePagesAnyOrder(
+        servletContext,
         req,
         resp,
-        pageRef,
-        CaptureLevel.META, new CapturePage.PageHandler<>() {
+        book.getContentRoot(),
+        CaptureLevel.META,
+        new CapturePage.PageHandler<>() {
           @Override
           @SuppressFBWarnings("NP_BOOLEAN_RETURN_NULL")
           public Boolean handlePage(Page page) throws ServletException, IOException {
-            // TODO: Chance for more concurrency here by view?
             for (View view : views) {
               if (
                   view.getAllowRobots(servletContext, req, resp, page)
-                  && view.isApplicable(servletContext, req, resp, page)
-                  ) {
-                return true;
+                      && view.isApplicable(servletContext, req, resp, page)
+              ) {
+                found[0] = true;
+                ReadableInstant viewLastModified = view.getLastModified(servletContext, req, resp, page);
+                if (viewLastModified == null) {
+                  // Stop traversal
+                  return true;
+                }
+                if (lastModified[0] == null || viewLastModified.isAfter(lastModified[0])) {
+                  lastModified[0] = viewLastModified;
+                }
               }
             }
             return null;
@@ -248,196 +354,276 @@ public class SiteMapIndexServlet extends HttpServlet {
         Page::getChildRefs,
         childPage -> book.equals(childPage.getBook())
     );
-    assert result == null || result : "Should always be null or true";
-    return result != null;
+    if (!found[0]) {
+      return null;
+    }
+    return new SiteMapUrl(
+        false,
+        book.getPathPrefix() + SiteMapServlet.GZIP_SERVLET_PATH,
+        unknown != null ? null : lastModified[0]
+    );
   }
 
-  @Override
-  protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-    AttributeEE.Request<SortedSet<SiteMapUrl>> locsAttribute = LOCS_ATTRIBUTE.context(req);
-    SortedSet<SiteMapUrl> old = locsAttribute.get();
-    try {
-      final ServletContext servletContext = getServletContext();
-      SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
-      final SortedSet<View> views = semanticCms.getViews();
-
-      SortedSet<SiteMapUrl> locs = new TreeSet<>(JarSitemapIndexInitializer.getJarSitemapIndexes(servletContext));
-      {
-        Collection<Book> books = semanticCms.getBooks().values();
-        int numBooks = books.size();
-        if (
-            numBooks > 1
-                && ConcurrencyCoordinator.useConcurrentSubrequests(req)
-        ) {
-          // Concurrent implementation
-          final HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(req);
-          final HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(resp);
-          final TempFileContext tempFileContext = TempFileContextEE.get(req);
-          List<Book> booksWithSiteMapUrl;
-          {
-            List<Callable<Boolean>> tasks = new ArrayList<>(numBooks);
-            {
-              for (final Book book : books) {
-                tasks.add(
-                    () -> {
-                      HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
-                      HttpServletResponse subresponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
-                      if (logger.isLoggable(Level.FINE)) {
-                        logger.log(
-                            Level.FINE,
-                            "called, subrequest={0}, book={1}",
-                            new Object[]{
-                                subrequest,
-                                book
-                            }
-                        );
-                      }
-                      return hasSiteMapUrl(
-                          servletContext,
-                          subrequest,
-                          subresponse,
-                          views,
-                          book,
-                          book.getContentRoot()
-                      );
-                    }
-                );
-              }
-            }
-            List<Boolean> results;
-            try {
-              results = semanticCms.getExecutors().getPerProcessor().callAll(tasks);
-            } catch (InterruptedException e) {
-              // Restore the interrupted status
-              Thread.currentThread().interrupt();
-              throw new ServletException(e);
-            } catch (ExecutionException e) {
-              // Maintain expected exception types while not losing stack trace
-              ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
-              throw new ServletException(e);
-            }
-            // Now find the last modified with concurrency
-            booksWithSiteMapUrl = new ArrayList<>(numBooks);
-            {
-              int i = 0;
-              for (Book book : books) {
-                if (results.get(i++)) {
-                  booksWithSiteMapUrl.add(book);
-                }
-              }
-              assert i == numBooks;
-            }
-          }
-          int booksWithSiteMapUrlSize = booksWithSiteMapUrl.size();
-          if (booksWithSiteMapUrlSize > 0) {
-            if (booksWithSiteMapUrlSize > 1) {
-              // Concurrent implementation
-              List<Callable<ReadableInstant>> lastModifiedTasks = new ArrayList<>(booksWithSiteMapUrlSize);
-              {
-                for (final Book book : booksWithSiteMapUrl) {
-                  lastModifiedTasks.add(
-                      () -> {
-                        HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
-                        HttpServletResponse subresponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
-                        if (logger.isLoggable(Level.FINE)) {
-                          logger.log(
-                              Level.FINE,
-                              "called, subrequest={0}, book={1}",
-                              new Object[]{
-                                  subrequest,
-                                  book
-                              }
-                          );
-                        }
-                        return SiteMapServlet.getLastModified(
-                            servletContext,
+  /**
+   * Adds the sitemap locations of one book.
+   *
+   * @param  streaming  See {@link SiteMapServlet#STREAMING_INIT_PARAM}
+   * @param  mayWait  See {@link SiteMapCache#getBookSiteMap(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.util.SortedSet, com.semanticcms.core.model.Book, boolean)}
+   */
+  private static void addLocs(
+      SortedSet<SiteMapUrl> locs,
+      ServletContext servletContext,
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      SiteMapCache cache,
+      SortedSet<View> views,
+      Book book,
+      boolean streaming,
+      boolean mayWait
+  ) throws ServletException, IOException {
+    if (streaming) {
+      SiteMapUrl loc = findStreamingLoc(servletContext, req, resp, views, book);
+      if (loc != null) {
+        locs.add(loc);
+      }
+    } else {
+      addLoc(locs, book, cache.getBookSiteMap(servletContext, req, resp, views, book, mayWait));
+    }
+  }
+
+  /**
+   * Finds all sitemap locations, including those of all books with at least one URL.
+   */
+  private static SortedSet<SiteMapUrl> findLocs(
+      final ServletContext servletContext,
+      final HttpServletRequest req,
+      final HttpServletResponse resp
+  ) throws ServletException, IOException {
+    SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
+    final SortedSet<View> views = semanticCms.getViews();
+
+    final boolean streaming = SiteMapServlet.isStreaming(servletContext);
+    SortedSet<SiteMapUrl> locs = new TreeSet<>(JarSitemapIndexInitializer.getJarSitemapIndexes(servletContext));
+    {
+      final SiteMapCache cache = SiteMapCache.getInstance(servletContext);
+      Collection<Book> books = semanticCms.getBooks().values();
+      int numBooks = books.size();
+      if (
+          numBooks > 1
+              && ConcurrencyCoordinator.useConcurrentSubrequests(req)
+      ) {
+        // Concurrent implementation
+        final HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(req);
+        final HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(resp);
+        final TempFileContext tempFileContext = TempFileContextEE.get(req);
+        List<Callable<SortedSet<SiteMapUrl>>> tasks = new ArrayList<>(numBooks);
+        {
+          for (final Book book : books) {
+            tasks.add(
+                () -> {
+                  HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
+                  HttpServletResponse subresponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
+                  if (logger.isLoggable(Level.FINE)) {
+                    logger.log(
+                        Level.FINE,
+                        "called, subrequest={0}, book={1}",
+                        new Object[]{
                             subrequest,
-                            subresponse,
-                            views,
                             book
-                        );
-                      }
-                  );
+                        }
+                    );
+                  }
+                  SortedSet<SiteMapUrl> bookLocs = new TreeSet<>();
+                  // Not waiting on another request from the executor, which could deadlock
+                  addLocs(bookLocs, servletContext, subrequest, subresponse, cache, views, book, streaming, false);
+                  return bookLocs;
                 }
-              }
-              List<ReadableInstant> lastModifieds;
-              try {
-                lastModifieds = semanticCms.getExecutors().getPerProcessor().callAll(lastModifiedTasks);
-              } catch (InterruptedException e) {
-                // Restore the interrupted status
-                Thread.currentThread().interrupt();
-                throw new ServletException(e);
-              } catch (ExecutionException e) {
-                // Maintain expected exception types while not losing stack trace
-                ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
-                throw new ServletException(e);
-              }
-              for (int i = 0; i < booksWithSiteMapUrlSize; i++) {
-                locs.add(
-                    new SiteMapUrl(
-                        false,
-                        booksWithSiteMapUrl.get(i).getPathPrefix(),
-                        lastModifieds.get(i)
-                    )
-                );
-              }
-            } else {
-              // Single implementation
-              Book book = booksWithSiteMapUrl.get(0);
-              locs.add(
-                  new SiteMapUrl(
-                      false,
-                      book.getPathPrefix(),
-                      SiteMapServlet.getLastModified(
-                          servletContext,
-                          req,
-                          resp,
-                          views,
-                          book
-                      )
-                  )
-              );
-            }
-          } else {
-            // Nothing to do
+            );
+          }
+        }
+        List<SortedSet<SiteMapUrl>> results;
+        try {
+          results = SiteMapTasks.callAll(servletContext, tasks);
+        } catch (InterruptedException e) {
+          // Restore the interrupted status
+          Thread.currentThread().interrupt();
+          throw new ServletException(e);
+        } catch (ExecutionException e) {
+          // Maintain expected exception types while not losing stack trace
+          ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+          throw new ServletException(e);
+        }
+        for (SortedSet<SiteMapUrl> bookLocs : results) {
+          locs.addAll(bookLocs);
+        }
+      } else {
+        // Sequential implementation
+        for (Book book : books) {
+          addLocs(locs, servletContext, req, resp, cache, views, book, streaming, true);
+        }
+      }
+    }
+    return locs;
+  }
+
+  /**
+   * Completes the response so the client is not kept waiting while the request thread continues.
+   */
+  private static void completeResponse(HttpServletResponse resp) throws IOException {
+    try {
+      resp.getWriter().close();
+    } catch (IllegalStateException e) {
+      // getOutputStream() already used
+      resp.getOutputStream().close();
+    }
+  }
+
+  /**
+   * Measured by any {@link SiteMapListener}.
+   */
+  @Override
+  protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    SiteMapListeners.getInstance(getServletContext()).service(req, resp, this::doService);
+  }
+
+  /**
+   * When the sitemap index is refreshed in the background, the last snapshot is served immediately.  Once stale,
+   * the first request to find it stale revalidates it after its response has been completed.
+   *
+   * <p>Captures require an active request, so the revalidation is performed within the request instead of by a
+   * separate scheduler.</p>
+   *
+   * <p>Concurrent requests that must find the sitemap locations await a single search, see
+   * {@link SiteMapCache#findLocs(javax.servlet.http.HttpServletRequest, java.util.concurrent.Callable)}.</p>
+   *
+   * <p>When {@link SiteMapServlet#ASYNC_INIT_PARAM asynchronous processing} is enabled, both finding the sitemap
+   * locations and revalidating a snapshot are performed on {@link SemanticCMS#getExecutors()}, releasing the request
+   * thread.</p>
+   *
+   * <p>When too many sitemaps are being computed, a request that must find the sitemap locations is responded to with
+   * {@code 503 Service Unavailable}, see {@link SiteMapAdmission}.  A stale snapshot is served as usual, but is not
+   * revalidated until a later request.</p>
+   *
+   * <p>A sitemap index {@link SiteMapGenerator generated at build time} is served as-is.</p>
+   *
+   * @see  SiteMapCache#INDEX_REFRESH_INIT_PARAM
+   */
+  @SuppressWarnings("try")
+  private void doService(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    final ServletContext servletContext = getServletContext();
+    if (StaticSiteMaps.getInstance(servletContext).serve(req, resp, CONTENT_TYPE)) {
+      return;
+    }
+    final SiteMapCache cache = SiteMapCache.getInstance(servletContext);
+    final SiteMapAdmission admission = SiteMapAdmission.getInstance(servletContext);
+    SortedSet<SiteMapUrl> locs;
+    SiteMapCache.IndexSnapshot snapshot;
+    SiteMapCache.IndexSnapshot refreshing = null;
+    try {
+      if (cache.isIndexRefreshEnabled()) {
+        snapshot = cache.getIndexSnapshot(req);
+        if (snapshot == null || LOCS_OUTCOME_ATTRIBUTE.context(req).get() != null) {
+          locs = computeLocs(servletContext, cache, req, resp);
+          if (locs == null) {
+            // Dispatched again once computed
+            return;
           }
+          snapshot = cache.setIndexSnapshot(req, locs);
         } else {
-          // Sequential implementation
-          for (Book book : books) {
-            if (
-                hasSiteMapUrl(
-                    servletContext,
-                    req,
-                    resp,
-                    views,
-                    book,
-                    book.getContentRoot()
-                )
-            ) {
-              locs.add(
-                  new SiteMapUrl(
-                      false,
-                      book.getPathPrefix(),
-                      SiteMapServlet.getLastModified(
-                          servletContext,
-                          req,
-                          resp,
-                          views,
-                          book
-                      )
-                  )
-              );
-            }
+          locs = snapshot.getLocs();
+          if (snapshot.tryBeginRefresh()) {
+            refreshing = snapshot;
           }
         }
+      } else {
+        locs = computeLocs(servletContext, cache, req, resp);
+        if (locs == null) {
+          // Dispatched again once computed
+          return;
+        }
+        snapshot = null;
+      }
+    } catch (SiteMapAdmission.OverloadedException e) {
+      admission.sendOverloaded(resp);
+      return;
+    }
+    try {
+      boolean gzip = req.getServletPath().endsWith(GZIP_SERVLET_PATH);
+      String etag = snapshot == null ? ETag.toETag(getHash(req, locs), gzip) : snapshot.getETag(req, gzip);
+      if (!ETag.notModified(req, resp, etag)) {
+        AttributeEE.Request<SortedSet<SiteMapUrl>> locsAttribute = LOCS_ATTRIBUTE.context(req);
+        SortedSet<SiteMapUrl> old = locsAttribute.get();
+        try (Attribute.OldValue oldSnapshot = SNAPSHOT_ATTRIBUTE.context(req).init(snapshot)) {
+          locsAttribute.set(locs);
+          super.service(req, resp);
+        } finally {
+          locsAttribute.set(old);
+        }
+      }
+      if (refreshing != null) {
+        completeResponse(resp);
+        // Ended once revalidated, which may be asynchronous
+        SiteMapCache.IndexSnapshot revalidating = refreshing;
+        refreshing = null;
+        SiteMapAsync.runAfterResponse(
+            req,
+            resp,
+            (subrequest, subresponse) -> {
+              try (SiteMapAdmission.Permit permit = admission.tryAcquire(subrequest)) {
+                if (permit != null) {
+                  cache.setIndexSnapshot(subrequest, findLocs(servletContext, subrequest, subresponse));
+                } else {
+                  // Remains stale, revalidated by a later request
+                  logger.fine("Too many sitemaps being computed, not revalidating sitemap index");
+                }
+              }
+            },
+            revalidating::endRefresh
+        );
       }
-      locsAttribute.set(locs);
-      super.service(req, resp);
     } finally {
-      locsAttribute.set(old);
+      if (refreshing != null) {
+        refreshing.endRefresh();
+      }
     }
   }
 
+  /**
+   * Finds the sitemap locations, asynchronously when {@link SiteMapServlet#ASYNC_INIT_PARAM enabled}.
+   *
+   * @return  the locations or {@code null} when being found asynchronously
+   */
+  private static SortedSet<SiteMapUrl> computeLocs(
+      ServletContext servletContext,
+      SiteMapCache cache,
+      HttpServletRequest req,
+      HttpServletResponse resp
+  ) throws ServletException, IOException {
+    return SiteMapAsync.compute(
+        req,
+        resp,
+        LOCS_OUTCOME_ATTRIBUTE,
+        (subrequest, subresponse) -> cache.findLocs(
+            subrequest,
+            () -> findLocs(servletContext, subrequest, subresponse)
+        )
+    );
+  }
+
+
+  /**
+   * Gets the hash of the sitemap index, for use in its entity tag.  Relative locations are resolved against the
+   * absolute URL of the context root, so it is included in the hash.
+   */
+  static String getHash(HttpServletRequest req, SortedSet<SiteMapUrl> locs) {
+    MessageDigest digest = ETag.newDigest();
+    ETag.update(digest, HttpServletUtil.getAbsoluteURL(req, "/"));
+    for (SiteMapUrl loc : locs) {
+      ETag.update(digest, loc);
+    }
+    return ETag.getHash(digest);
+  }
+
   private static SortedSet<SiteMapUrl> getLocs(HttpServletRequest req) {
     SortedSet<SiteMapUrl> locs = LOCS_ATTRIBUTE.context(req).get();
     if (locs == null) {
@@ -461,6 +647,10 @@ public class SiteMapIndexServlet extends HttpServlet {
    */
   @Override
   protected long getLastModified(HttpServletRequest req) {
+    if (ETag.hasIfNoneMatch(req)) {
+      // If-None-Match takes precedence over If-Modified-Since
+      return -1;
+    }
     SortedSet<SiteMapUrl> locs = getLocs(req);
     if (locs.isEmpty()) {
       return -1;
@@ -474,59 +664,97 @@ public class SiteMapIndexServlet extends HttpServlet {
   }
 
   /**
-   * Creates a date formatter.
-   * See <a href="https://stackoverflow.com/a/3914498/7121505">java - How to get current moment in ISO 8601 format with
-   * date, hour, and minute? - Stack Overflow</a>.
+   * Starts the response, compressing when requested.  A compressed response is complete once the returned stream is
+   * closed.  The content is in {@link SiteMapWriter#ENCODING}.
    */
-  static DateFormat createIso8601Format() {
-    TimeZone tz = TimeZone.getTimeZone("UTC");
-    DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'"); // Quoted "Z" to indicate UTC, no timezone offset
-    df.setTimeZone(tz);
-    return df;
+  static OutputStream startResponse(HttpServletResponse resp, boolean gzip, String contentType) throws IOException {
+    resp.resetBuffer();
+    if (gzip) {
+      resp.setContentType(ContentType.GZIP);
+      return new GZIPOutputStream(resp.getOutputStream());
+    } else {
+      resp.setContentType(contentType);
+      resp.setCharacterEncoding(SiteMapWriter.ENCODING.name());
+      return resp.getOutputStream();
+    }
   }
 
-  @Override
-  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-    final SortedSet<SiteMapUrl> locs = getLocs(req);
+  /**
+   * Sets the headers of a response with a known content length, without writing the content.
+   *
+   * @see  #writeBytes(javax.servlet.http.HttpServletResponse, boolean, java.lang.String, byte[])
+   */
+  static void writeHeaders(HttpServletResponse resp, boolean gzip, String contentType, int contentLength) {
+    resp.resetBuffer();
+    if (gzip) {
+      resp.setContentType(ContentType.GZIP);
+    } else {
+      resp.setContentType(contentType);
+      resp.setCharacterEncoding(SiteMapWriter.ENCODING.name());
+    }
+    resp.setContentLength(contentLength);
+  }
 
-    final DateFormat iso8601 = createIso8601Format();
+  /**
+   * Writes a response from already rendered bytes, in a single write with a known content length.
+   *
+   * @see  #startResponse(javax.servlet.http.HttpServletResponse, boolean, java.lang.String)
+   */
+  static void writeBytes(HttpServletResponse resp, boolean gzip, String contentType, byte[] bytes) throws IOException {
+    writeHeaders(resp, gzip, contentType, bytes.length);
+    resp.getOutputStream().write(bytes);
+  }
 
-    resp.resetBuffer();
-    resp.setContentType(CONTENT_TYPE);
-    resp.setCharacterEncoding(ENCODING.name());
-    PrintWriter out = resp.getWriter();
-
-    out.println("<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>");
-    out.print("<!-- ");
-    encodeTextInXhtml(GENERATED_COMMENT, out);
-    out.println(" -->");
-    out.println("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+  /**
+   * Renders to bytes, compressing when requested.
+   */
+  static byte[] render(boolean gzip, SiteMapWriter.Renderer renderer) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (SiteMapWriter out = new SiteMapWriter(gzip ? new GZIPOutputStream(bout) : bout)) {
+      renderer.render(out);
+    }
+    return bout.toByteArray();
+  }
+
+  private static void writeIndex(
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      SortedSet<SiteMapUrl> locs,
+      SiteMapWriter out
+  ) throws IOException {
+    final SiteMapCache cache = SiteMapCache.getInstance(req.getServletContext());
+    out.write(HEADER);
     for (SiteMapUrl loc : locs) {
-      out.println("  " + SITEMAP_OPEN);
-      out.print("    " + LOC_OPEN);
-      // Encode again to force RFC 3986 US-ASCII
-      URIEncoder.encodeURI(loc.isAbsolute() ? loc.getLoc()
-          : Canonical.encodeCanonicalURL(
-              resp,
-              HttpServletUtil.getAbsoluteURL(
-                  req,
-                  URIEncoder.encodeURI(
-                      loc.getLoc() + SiteMapServlet.SERVLET_PATH
-                  )
-              )
-          ),
-          textInXhtmlEncoder,
-          out
+      out.writeEntry(
+          SiteMapWriter.SITEMAP_OPEN,
+          loc.isAbsolute()
+              // Encode again to force RFC 3986 US-ASCII
+              ? URIEncoder.encodeURI(loc.getLoc())
+              : cache.getCanonicalUrl(req, resp, loc.getLoc()),
+          loc.getLastmod(),
+          SiteMapWriter.SITEMAP_CLOSE
       );
-      out.println(LOC_CLOSE);
-      ReadableInstant lastmod = loc.getLastmod();
-      if (lastmod != null) {
-        out.print("    " + LASTMOD_OPEN);
-        encodeTextInXhtml(iso8601.format(new Date(lastmod.getMillis())), out);
-        out.println(LASTMOD_CLOSE);
+    }
+    out.write(FOOTER);
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    final SortedSet<SiteMapUrl> locs = getLocs(req);
+    boolean gzip = req.getServletPath().endsWith(GZIP_SERVLET_PATH);
+    SiteMapCache.IndexSnapshot snapshot = SNAPSHOT_ATTRIBUTE.context(req).get();
+    if (snapshot != null) {
+      // Render once per snapshot, which is already specific to the scheme, host, port, and context path
+      byte[] bytes = snapshot.getBytes(gzip);
+      if (bytes == null) {
+        bytes = render(gzip, out -> writeIndex(req, resp, locs, out));
+        snapshot.setBytes(gzip, bytes);
       }
-      out.println("  " + SITEMAP_CLOSE);
+      writeBytes(resp, gzip, CONTENT_TYPE, bytes);
+    } else {
+      SiteMapWriter out = new SiteMapWriter(startResponse(resp, gzip, CONTENT_TYPE));
+      writeIndex(req, resp, locs, out);
+      SiteMapServlet.finish(out, gzip);
     }
-    out.println("</sitemapindex>");
   }
 }
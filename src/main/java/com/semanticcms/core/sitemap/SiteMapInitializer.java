@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
- * Copyright (C) 2016, 2017, 2022  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -32,7 +32,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRegistration;
 
 /**
- * Dynamically adds the SiteMapServlet to /sitemap.xml on each book.
+ * Dynamically adds the SiteMapServlet to /sitemap.xml and /sitemap.xml.gz on each book.
  */
 public class SiteMapInitializer implements ServletContainerInitializer {
 
@@ -42,8 +42,13 @@ public class SiteMapInitializer implements ServletContainerInitializer {
         SiteMapServlet.class.getName(),
         SiteMapServlet.class
     );
+    // Only used when enabled, see SiteMapServlet.ASYNC_INIT_PARAM
+    registration.setAsyncSupported(true);
     for (Book book : SemanticCMS.getInstance(servletContext).getBooks().values()) {
-      registration.addMapping(book.getPathPrefix() + SiteMapServlet.SERVLET_PATH);
+      registration.addMapping(
+          book.getPathPrefix() + SiteMapServlet.SERVLET_PATH,
+          book.getPathPrefix() + SiteMapServlet.GZIP_SERVLET_PATH
+      );
     }
   }
 }
@@ -0,0 +1,102 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.sitemap;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.servlet.View;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Receives measurements of sitemap generation, such as to find the books and views that make crawler traffic
+ * expensive.
+ *
+ * <p>Listeners are found by {@link java.util.ServiceLoader} from the class loader of the web application, once per
+ * servlet context.  Listeners are called concurrently and must be thread-safe.  Each call is made by the thread
+ * performing the work, so should return quickly.</p>
+ *
+ * @see  SiteMapMetrics
+ */
+public interface SiteMapListener {
+
+  /**
+   * Called when all pages of a book have been traversed.
+   *
+   * @param  nanos  the time taken to traverse the book, in nanoseconds
+   * @param  pages  the number of pages traversed
+   * @param  viewChecks  the number of times a view was checked for a page, counting each call to
+   *                     {@link View#getAllowRobots(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}
+   *                     and {@link View#isApplicable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}
+   * @param  urls  the number of distinct URLs found
+   * @param  urlsWithoutLastmod  the number of distinct URLs without a known last modified time
+   */
+  default void bookTraversed(Book book, long nanos, int pages, int viewChecks, int urls, int urlsWithoutLastmod) {
+    // Does nothing by default
+  }
+
+  /**
+   * Called when the changed pages of a cached sitemap have been captured again, instead of traversing the book.
+   *
+   * @param  nanos  the time taken to update the pages, in nanoseconds
+   * @param  pages  the number of pages updated
+   * @param  viewChecks  the number of times a view was checked for a page, counted as in
+   *                     {@link #bookTraversed(com.semanticcms.core.model.Book, long, int, int, int, int)}
+   */
+  default void pagesUpdated(Book book, long nanos, int pages, int viewChecks) {
+    // Does nothing by default
+  }
+
+  /**
+   * Called when the sitemap of a book is found in the cache, without traversing the book.
+   */
+  default void cacheHit(Book book) {
+    // Does nothing by default
+  }
+
+  /**
+   * Called when the sitemap of a book is not found in the cache, or has expired, and the book will be traversed.
+   * When the cache is disabled, every traversal is a miss.
+   */
+  default void cacheMiss(Book book) {
+    // Does nothing by default
+  }
+
+  /**
+   * Called when the sitemap of a book is already being computed by another request, which this request waits for
+   * instead of traversing the book.
+   */
+  default void coalesced(Book book) {
+    // Does nothing by default
+  }
+
+  /**
+   * Called when a request for a sitemap or the sitemap index has completed, successfully or not.
+   *
+   * @param  req  the request, which must not be used after this call
+   * @param  status  the status of the response, such as {@link javax.servlet.http.HttpServletResponse#SC_NOT_MODIFIED}
+   * @param  bytes  the number of bytes written, after any compression
+   * @param  nanos  the time taken to complete the request, in nanoseconds
+   */
+  default void requestCompleted(HttpServletRequest req, int status, long bytes, long nanos) {
+    // Does nothing by default
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.servlet.attribute.AttributeEE;
+import com.aoapps.servlet.attribute.ScopeEE;
+import com.semanticcms.core.model.Book;
+import java.io.IOException;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Dispatches measurements to all {@link SiteMapListener} of a servlet context.  Measurements are only taken when
+ * there is at least one listener.
+ */
+final class SiteMapListeners {
+
+  private static final Logger logger = Logger.getLogger(SiteMapListeners.class.getName());
+
+  private static final ScopeEE.Application.Attribute<SiteMapListeners> APPLICATION_ATTRIBUTE =
+      ScopeEE.APPLICATION.attribute(SiteMapListeners.class.getName());
+
+  /**
+   * Gets the listeners for the given servlet context, loading them on first use.
+   */
+  static SiteMapListeners getInstance(ServletContext servletContext) {
+    return APPLICATION_ATTRIBUTE.context(servletContext).computeIfAbsent(name -> new SiteMapListeners(servletContext));
+  }
+
+  /**
+   * Services a request.
+   */
+  @FunctionalInterface
+  interface Service {
+    void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException;
+  }
+
+  private final List<SiteMapListener> listeners = new CopyOnWriteArrayList<>();
+
+  private SiteMapListeners(ServletContext servletContext) {
+    for (SiteMapListener listener : ServiceLoader.load(SiteMapListener.class, servletContext.getClassLoader())) {
+      logger.log(Level.INFO, "Found sitemap listener: {0}", listener.getClass().getName());
+      listeners.add(listener);
+    }
+  }
+
+  void add(SiteMapListener listener) {
+    listeners.add(listener);
+  }
+
+  void remove(SiteMapListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Are there any listeners?  When not, no measurements should be taken.
+   */
+  boolean isEnabled() {
+    return !listeners.isEmpty();
+  }
+
+  void bookTraversed(Book book, long nanos, int pages, int viewChecks, int urls, int urlsWithoutLastmod) {
+    for (SiteMapListener listener : listeners) {
+      listener.bookTraversed(book, nanos, pages, viewChecks, urls, urlsWithoutLastmod);
+    }
+  }
+
+  void pagesUpdated(Book book, long nanos, int pages, int viewChecks) {
+    for (SiteMapListener listener : listeners) {
+      listener.pagesUpdated(book, nanos, pages, viewChecks);
+    }
+  }
+
+  void cacheHit(Book book) {
+    for (SiteMapListener listener : listeners) {
+      listener.cacheHit(book);
+    }
+  }
+
+  void cacheMiss(Book book) {
+    for (SiteMapListener listener : listeners) {
+      listener.cacheMiss(book);
+    }
+  }
+
+  void coalesced(Book book) {
+    for (SiteMapListener listener : listeners) {
+      listener.coalesced(book);
+    }
+  }
+
+  /**
+   * The measurement of a request, kept across {@link SiteMapAsync asynchronous} dispatches.
+   */
+  private static final class Measurement {
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * The bytes written by all dispatches so far.  Dispatches of the same request do not overlap.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Is reported by an {@link AsyncListener} once the asynchronous processing completes?
+     */
+    private volatile boolean async;
+  }
+
+  private static final ScopeEE.Request.Attribute<Measurement> MEASUREMENT_ATTRIBUTE =
+      ScopeEE.REQUEST.attribute(SiteMapListeners.class.getName() + ".measurement");
+
+  private void requestCompleted(HttpServletRequest req, HttpServletResponse resp, Measurement measurement) {
+    long nanos = System.nanoTime() - measurement.startNanos;
+    int status = resp.getStatus();
+    long bytes = measurement.bytes.get();
+    for (SiteMapListener listener : listeners) {
+      listener.requestCompleted(req, status, bytes, nanos);
+    }
+  }
+
+  /**
+   * Services a request, measuring its time and the bytes written when there are any listeners.  When asynchronous
+   * processing is started, the request is measured until the asynchronous processing completes.
+   */
+  void service(HttpServletRequest req, HttpServletResponse resp, Service service)
+      throws ServletException, IOException {
+    if (listeners.isEmpty()) {
+      service.service(req, resp);
+    } else {
+      AttributeEE.Request<Measurement> measurementAttribute = MEASUREMENT_ATTRIBUTE.context(req);
+      Measurement existing = measurementAttribute.get();
+      final Measurement measurement;
+      if (existing == null) {
+        measurement = new Measurement();
+        measurementAttribute.set(measurement);
+      } else {
+        measurement = existing;
+      }
+      CountingHttpServletResponse counting = new CountingHttpServletResponse(resp);
+      try {
+        service.service(req, counting);
+      } finally {
+        measurement.bytes.addAndGet(counting.getCount());
+        if (req.isAsyncStarted()) {
+          if (!measurement.async) {
+            measurement.async = true;
+            req.getAsyncContext().addListener(new AsyncListener() {
+              @Override
+              public void onComplete(AsyncEvent event) {
+                requestCompleted(req, resp, measurement);
+              }
+
+              @Override
+              public void onTimeout(AsyncEvent event) {
+                // Reported on complete
+              }
+
+              @Override
+              public void onError(AsyncEvent event) {
+                // Reported on complete
+              }
+
+              @Override
+              public void onStartAsync(AsyncEvent event) {
+                // Nothing to do
+              }
+            });
+          }
+        } else if (!measurement.async) {
+          measurementAttribute.remove();
+          requestCompleted(req, resp, measurement);
+        }
+      }
+    }
+  }
+}
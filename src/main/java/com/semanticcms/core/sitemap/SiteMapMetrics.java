@@ -0,0 +1,376 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.lang.Strings;
+import com.aoapps.servlet.attribute.AttributeEE;
+import com.aoapps.servlet.attribute.ScopeEE;
+import com.semanticcms.core.model.Book;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Accumulates the measurements of sitemap generation, both in total and per book, and exposes them through JMX.
+ *
+ * @see  Initializer#JMX_INIT_PARAM
+ */
+public final class SiteMapMetrics implements SiteMapListener, SiteMapMetricsMBean {
+
+  private static final Logger logger = Logger.getLogger(SiteMapMetrics.class.getName());
+
+  /**
+   * Registers the metrics with the platform MBean server on application start-up, when enabled.
+   */
+  @WebListener("Registers the sitemap metrics with the platform MBean server on application start-up, when enabled.")
+  public static class Initializer implements ServletContextListener {
+
+    /**
+     * The context init parameter that enables registering the metrics with the platform MBean server, with the
+     * object name <code>com.semanticcms.core.sitemap:type=SiteMapMetrics,context=<i>contextPath</i></code>.
+     */
+    public static final String JMX_INIT_PARAM = SiteMapMetrics.class.getName() + ".jmx";
+
+    private static final ScopeEE.Application.Attribute<ObjectName> OBJECT_NAME =
+        ScopeEE.APPLICATION.attribute(Initializer.class.getName() + ".objectName");
+
+    private static final ScopeEE.Application.Attribute<SiteMapMetrics> METRICS =
+        ScopeEE.APPLICATION.attribute(Initializer.class.getName() + ".metrics");
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      if (Boolean.parseBoolean(Strings.trim(servletContext.getInitParameter(JMX_INIT_PARAM)))) {
+        SiteMapMetrics metrics = new SiteMapMetrics();
+        String contextPath = servletContext.getContextPath();
+        try {
+          ObjectName objectName = new ObjectName(
+              "com.semanticcms.core.sitemap:type=SiteMapMetrics,context="
+                  + ObjectName.quote(contextPath.isEmpty() ? "/" : contextPath)
+          );
+          ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+          OBJECT_NAME.context(servletContext).set(objectName);
+        } catch (JMException e) {
+          logger.log(Level.WARNING, "Unable to register sitemap metrics", e);
+        }
+        METRICS.context(servletContext).set(metrics);
+        SiteMapListeners.getInstance(servletContext).add(metrics);
+      }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      AttributeEE.Application<SiteMapMetrics> metricsAttribute = METRICS.context(servletContext);
+      SiteMapMetrics metrics = metricsAttribute.get();
+      if (metrics != null) {
+        metricsAttribute.remove();
+        SiteMapListeners.getInstance(servletContext).remove(metrics);
+      }
+      AttributeEE.Application<ObjectName> objectNameAttribute = OBJECT_NAME.context(servletContext);
+      ObjectName objectName = objectNameAttribute.get();
+      if (objectName != null) {
+        objectNameAttribute.remove();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+          server.unregisterMBean(objectName);
+        } catch (JMException e) {
+          logger.log(Level.WARNING, "Unable to unregister sitemap metrics", e);
+        }
+      }
+    }
+  }
+
+  private static final class BookMetrics {
+
+    private final LongAdder traversals = new LongAdder();
+    private final LongAdder traversalNanos = new LongAdder();
+    private volatile long lastTraversalNanos;
+    private volatile int pages;
+    private volatile int viewChecks;
+    private volatile int urls;
+    private volatile int urlsWithoutLastmod;
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder updateNanos = new LongAdder();
+    private final LongAdder updatedPages = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    @Override
+    public String toString() {
+      return "traversals=" + traversals.sum()
+          + ", traversalMillis=" + TimeUnit.NANOSECONDS.toMillis(traversalNanos.sum())
+          + ", lastTraversalMillis=" + TimeUnit.NANOSECONDS.toMillis(lastTraversalNanos)
+          + ", pages=" + pages
+          + ", viewChecks=" + viewChecks
+          + ", urls=" + urls
+          + ", urlsWithoutLastmod=" + urlsWithoutLastmod
+          + ", updates=" + updates.sum()
+          + ", updateMillis=" + TimeUnit.NANOSECONDS.toMillis(updateNanos.sum())
+          + ", updatedPages=" + updatedPages.sum()
+          + ", cacheHits=" + cacheHits.sum()
+          + ", cacheMisses=" + cacheMisses.sum()
+          + ", coalesced=" + coalesced.sum();
+    }
+  }
+
+  private final LongAdder traversals = new LongAdder();
+  private final LongAdder traversalNanos = new LongAdder();
+  private final LongAdder pages = new LongAdder();
+  private final LongAdder viewChecks = new LongAdder();
+  private final LongAdder urls = new LongAdder();
+  private final LongAdder urlsWithoutLastmod = new LongAdder();
+  private final LongAdder updates = new LongAdder();
+  private final LongAdder updateNanos = new LongAdder();
+  private final LongAdder updatedPages = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder cacheMisses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder requestNanos = new LongAdder();
+  private final LongAdder notModified = new LongAdder();
+  private final LongAdder overloaded = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+
+  /**
+   * The measurements of each book, by name.  This is bounded by the number of books.
+   */
+  private final ConcurrentMap<String, BookMetrics> books = new ConcurrentHashMap<>();
+
+  SiteMapMetrics() {
+    // Created by Initializer
+  }
+
+  private BookMetrics getBookMetrics(Book book) {
+    return books.computeIfAbsent(book.getName(), name -> new BookMetrics());
+  }
+
+  @Override
+  public void bookTraversed(Book book, long nanos, int pages, int viewChecks, int urls, int urlsWithoutLastmod) {
+    traversals.increment();
+    traversalNanos.add(nanos);
+    this.pages.add(pages);
+    this.viewChecks.add(viewChecks);
+    this.urls.add(urls);
+    this.urlsWithoutLastmod.add(urlsWithoutLastmod);
+    BookMetrics bookMetrics = getBookMetrics(book);
+    bookMetrics.traversals.increment();
+    bookMetrics.traversalNanos.add(nanos);
+    bookMetrics.lastTraversalNanos = nanos;
+    bookMetrics.pages = pages;
+    bookMetrics.viewChecks = viewChecks;
+    bookMetrics.urls = urls;
+    bookMetrics.urlsWithoutLastmod = urlsWithoutLastmod;
+  }
+
+  @Override
+  public void pagesUpdated(Book book, long nanos, int pages, int viewChecks) {
+    updates.increment();
+    updateNanos.add(nanos);
+    updatedPages.add(pages);
+    this.viewChecks.add(viewChecks);
+    BookMetrics bookMetrics = getBookMetrics(book);
+    bookMetrics.updates.increment();
+    bookMetrics.updateNanos.add(nanos);
+    bookMetrics.updatedPages.add(pages);
+  }
+
+  @Override
+  public void cacheHit(Book book) {
+    cacheHits.increment();
+    getBookMetrics(book).cacheHits.increment();
+  }
+
+  @Override
+  public void cacheMiss(Book book) {
+    cacheMisses.increment();
+    getBookMetrics(book).cacheMisses.increment();
+  }
+
+  @Override
+  public void coalesced(Book book) {
+    coalesced.increment();
+    getBookMetrics(book).coalesced.increment();
+  }
+
+  @Override
+  public void requestCompleted(HttpServletRequest req, int status, long bytes, long nanos) {
+    requests.increment();
+    requestNanos.add(nanos);
+    if (status == HttpServletResponse.SC_NOT_MODIFIED) {
+      notModified.increment();
+    } else if (status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+      overloaded.increment();
+    }
+    bytesWritten.add(bytes);
+  }
+
+  @Override
+  public long getTraversals() {
+    return traversals.sum();
+  }
+
+  @Override
+  public long getTraversalMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(traversalNanos.sum());
+  }
+
+  @Override
+  public long getPages() {
+    return pages.sum();
+  }
+
+  @Override
+  public long getViewChecks() {
+    return viewChecks.sum();
+  }
+
+  @Override
+  public long getUrls() {
+    return urls.sum();
+  }
+
+  @Override
+  public long getUrlsWithoutLastmod() {
+    return urlsWithoutLastmod.sum();
+  }
+
+  @Override
+  public long getUpdates() {
+    return updates.sum();
+  }
+
+  @Override
+  public long getUpdateMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(updateNanos.sum());
+  }
+
+  @Override
+  public long getUpdatedPages() {
+    return updatedPages.sum();
+  }
+
+  @Override
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return cacheMisses.sum();
+  }
+
+  @Override
+  public double getCacheHitRatio() {
+    long hits = cacheHits.sum();
+    long lookups = hits + cacheMisses.sum();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  @Override
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  @Override
+  public long getRequestMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(requestNanos.sum());
+  }
+
+  @Override
+  public long getNotModified() {
+    return notModified.sum();
+  }
+
+  @Override
+  public double getNotModifiedRatio() {
+    long total = requests.sum();
+    return total == 0 ? 0 : (double) notModified.sum() / total;
+  }
+
+  @Override
+  public long getOverloaded() {
+    return overloaded.sum();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public String[] getBooks() {
+    List<Map.Entry<String, BookMetrics>> entries = new ArrayList<>(books.entrySet());
+    entries.sort((e1, e2) -> Long.compare(e2.getValue().traversalNanos.sum(), e1.getValue().traversalNanos.sum()));
+    String[] result = new String[entries.size()];
+    for (int i = 0; i < result.length; i++) {
+      Map.Entry<String, BookMetrics> entry = entries.get(i);
+      result[i] = entry.getKey() + ": " + entry.getValue();
+    }
+    return result;
+  }
+
+  @Override
+  public void reset() {
+    traversals.reset();
+    traversalNanos.reset();
+    pages.reset();
+    viewChecks.reset();
+    urls.reset();
+    urlsWithoutLastmod.reset();
+    updates.reset();
+    updateNanos.reset();
+    updatedPages.reset();
+    cacheHits.reset();
+    cacheMisses.reset();
+    coalesced.reset();
+    requests.reset();
+    requestNanos.reset();
+    notModified.reset();
+    overloaded.reset();
+    bytesWritten.reset();
+    books.clear();
+  }
+}
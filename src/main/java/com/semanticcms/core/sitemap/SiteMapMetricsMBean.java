@@ -0,0 +1,131 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.sitemap;
+
+/**
+ * The JMX management interface of {@link SiteMapMetrics}.
+ */
+public interface SiteMapMetricsMBean {
+
+  /**
+   * Gets the number of books traversed.
+   */
+  long getTraversals();
+
+  /**
+   * Gets the total time spent traversing books, in milliseconds.
+   */
+  long getTraversalMillis();
+
+  /**
+   * Gets the number of pages traversed.
+   */
+  long getPages();
+
+  /**
+   * Gets the number of times a view was checked for a page.
+   */
+  long getViewChecks();
+
+  /**
+   * Gets the number of URLs found.
+   */
+  long getUrls();
+
+  /**
+   * Gets the number of URLs found without a known last modified time.
+   */
+  long getUrlsWithoutLastmod();
+
+  /**
+   * Gets the number of times the changed pages of a cached sitemap were captured again, instead of traversing the
+   * book.
+   */
+  long getUpdates();
+
+  /**
+   * Gets the total time spent updating changed pages, in milliseconds.
+   */
+  long getUpdateMillis();
+
+  /**
+   * Gets the number of changed pages captured again.
+   */
+  long getUpdatedPages();
+
+  long getCacheHits();
+
+  long getCacheMisses();
+
+  /**
+   * Gets the ratio of cache hits to all cache lookups, or {@code 0} when none.
+   */
+  double getCacheHitRatio();
+
+  /**
+   * Gets the number of times a request waited for the traversal of a book by another request, instead of traversing
+   * the book itself.
+   */
+  long getCoalesced();
+
+  /**
+   * Gets the number of requests for sitemaps and the sitemap index.
+   */
+  long getRequests();
+
+  /**
+   * Gets the total time spent completing requests, in milliseconds.
+   */
+  long getRequestMillis();
+
+  /**
+   * Gets the number of requests responded to with {@code 304 Not Modified}.
+   */
+  long getNotModified();
+
+  /**
+   * Gets the ratio of {@code 304 Not Modified} responses to all requests, or {@code 0} when none.
+   */
+  double getNotModifiedRatio();
+
+  /**
+   * Gets the number of requests responded to with {@code 503 Service Unavailable}, when too many sitemaps were being
+   * computed.
+   */
+  long getOverloaded();
+
+  /**
+   * Gets the total number of bytes written, after any compression.
+   */
+  long getBytesWritten();
+
+  /**
+   * Gets the measurements of each book, slowest to traverse first.
+   */
+  String[] getBooks();
+
+  /**
+   * Resets all measurements to zero.
+   */
+  void reset();
+}
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
- * Copyright (C) 2016, 2019, 2020, 2021, 2022, 2023, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2019, 2020, 2021, 2022, 2023, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -24,11 +24,7 @@
 package com.semanticcms.core.sitemap;
 
 import com.aoapps.lang.io.ContentType;
-import com.aoapps.net.URIEncoder;
-import com.aoapps.servlet.http.Canonical;
-import com.aoapps.servlet.http.HttpServletUtil;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
@@ -79,32 +75,54 @@ public class SiteMapRobotsTxtServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Generates the content of robots.txt.
+   */
+  private static byte[] render(SiteMapCache cache, HttpServletRequest req, HttpServletResponse resp) {
+    return (
+        "User-agent: *\n"
+            + "Allow: /\n"
+            + "Sitemap: " + cache.getCanonicalUrl(req, resp, SiteMapIndexServlet.SERVLET_PATH) + '\n'
+    ).getBytes(ENCODING);
+  }
+
+  /**
+   * Gets the content of robots.txt, rendering and hashing once per scheme, host, port, and context path.  It does not
+   * depend on the pages of any book, so is kept whether {@link SiteMapCache#TTL_INIT_PARAM caching} is enabled or not.
+   */
+  private SiteMapCache.RobotsTxt getRobotsTxt(HttpServletRequest req, HttpServletResponse resp) {
+    SiteMapCache cache = SiteMapCache.getInstance(getServletContext());
+    SiteMapCache.RobotsTxt robotsTxt = cache.getRobotsTxt(req);
+    if (robotsTxt == null) {
+      robotsTxt = new SiteMapCache.RobotsTxt(render(cache, req, resp));
+      cache.setRobotsTxt(req, robotsTxt);
+    }
+    return robotsTxt;
+  }
+
+  @Override
+  protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    if (!ETag.notModified(req, resp, getRobotsTxt(req, resp).getETag())) {
+      super.service(req, resp);
+    }
+  }
+
   @Override
   protected long getLastModified(HttpServletRequest req) {
+    if (ETag.hasIfNoneMatch(req)) {
+      // If-None-Match takes precedence over If-Modified-Since
+      return -1;
+    }
     return SiteMapIndexServlet.truncateToSecond(LAST_MODIFIED);
   }
 
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    byte[] bytes = getRobotsTxt(req, resp).getBytes();
     resp.resetBuffer();
     resp.setContentType(CONTENT_TYPE);
     resp.setCharacterEncoding(ENCODING.name());
-    PrintWriter out = resp.getWriter();
-    out.println("User-agent: *");
-    out.println("Allow: /");
-    out.print("Sitemap: ");
-    URIEncoder.encodeURI(// Encode again to force RFC 3986 US-ASCII
-        Canonical.encodeCanonicalURL(
-            resp,
-            HttpServletUtil.getAbsoluteURL(
-                req,
-                URIEncoder.encodeURI(
-                    SiteMapIndexServlet.SERVLET_PATH
-                )
-            )
-        ),
-        out
-    );
-    out.println();
+    resp.setContentLength(bytes.length);
+    resp.getOutputStream().write(bytes);
   }
 }
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
- * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2023, 2025  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2023, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,28 +23,45 @@
 
 package com.semanticcms.core.sitemap;
 
-import static com.aoapps.encoding.TextInXhtmlEncoder.encodeTextInXhtml;
-import static com.aoapps.encoding.TextInXhtmlEncoder.textInXhtmlEncoder;
-
+import com.aoapps.lang.Strings;
 import com.aoapps.lang.attribute.Attribute;
+import com.aoapps.lang.concurrent.ExecutionExceptions;
 import com.aoapps.lang.io.ContentType;
-import com.aoapps.net.URIEncoder;
 import com.aoapps.servlet.attribute.ScopeEE;
+import com.aoapps.servlet.subrequest.HttpServletSubRequest;
+import com.aoapps.servlet.subrequest.HttpServletSubResponse;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletRequest;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletResponse;
+import com.aoapps.tempfiles.TempFileContext;
+import com.aoapps.tempfiles.servlet.TempFileContextEE;
 import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.ChildRef;
 import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.model.PageReferrer;
 import com.semanticcms.core.servlet.CaptureLevel;
 import com.semanticcms.core.servlet.CapturePage;
+import com.semanticcms.core.servlet.ConcurrencyCoordinator;
 import com.semanticcms.core.servlet.SemanticCMS;
 import com.semanticcms.core.servlet.View;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.text.DateFormat;
-import java.util.Date;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -55,7 +72,7 @@ import org.joda.time.ReadableInstant;
 /**
  * Creates a sitemap of one book.
  *
- * @see  SiteMapInitializer  The url-patterns are dynamically registered to have a sitemap.xml in each book.
+ * @see  SiteMapInitializer  The url-patterns are dynamically registered to have a sitemap.xml and sitemap.xml.gz in each book.
  */
 public class SiteMapServlet extends HttpServlet {
 
@@ -69,18 +86,125 @@ public class SiteMapServlet extends HttpServlet {
 
   public static final String SERVLET_PATH = "/sitemap.xml";
 
+  /**
+   * The gzip-compressed form of the sitemap.
+   */
+  public static final String GZIP_SERVLET_PATH = SERVLET_PATH + ".gz";
+
   private static final String CONTENT_TYPE = ContentType.XML;
 
-  private static final Charset ENCODING = StandardCharsets.UTF_8;
+  private static final byte[] HEADER = SiteMapWriter.createHeader(
+      GENERATED_COMMENT,
+      "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+  );
+
+  private static final byte[] FOOTER = SiteMapWriter.createFooter("urlset");
+
+  /**
+   * The request parameter that selects the page of a sitemap that has been split into multiple pages.
+   * Pages are numbered from one, and the first page is served when not provided.
+   */
+  public static final String PAGE_PARAM = "page";
+
+  /**
+   * The context init parameter that enables streaming mode.  When {@code true}, each URL is written as its page is
+   * traversed, in traversal order, instead of first collecting all URLs of the book.  This keeps memory use bounded
+   * for large books, at the cost of having no last modified time and no splitting into pages.  A sitemap that reaches
+   * the protocol limits is truncated.  Streaming is not used when {@link SiteMapCache#TTL_INIT_PARAM caching} is
+   * enabled.  Defaults to {@code false}.
+   */
+  public static final String STREAMING_INIT_PARAM = SiteMapServlet.class.getName() + ".streaming";
+
+  /**
+   * Checks if streaming mode is enabled.
+   *
+   * @see  #STREAMING_INIT_PARAM
+   */
+  static boolean isStreaming(ServletContext servletContext) {
+    return
+        Boolean.parseBoolean(Strings.trim(servletContext.getInitParameter(STREAMING_INIT_PARAM)))
+            && !SiteMapCache.getInstance(servletContext).isEnabled();
+  }
+
+  /**
+   * The context init parameter that enables asynchronous processing.  When {@code true}, and supported by the request,
+   * a sitemap or sitemap index that must be computed is computed on {@link SemanticCMS#getExecutors()} while the
+   * request thread is released to the container.  The response is written once computed.  This keeps slow sitemaps
+   * from exhausting the threads of the connector.  Cached sitemaps are served directly, and streaming sitemaps are
+   * always written by the request thread.  Defaults to {@code false}.
+   */
+  public static final String ASYNC_INIT_PARAM = SiteMapServlet.class.getName() + ".async";
+
+  /**
+   * Checks if asynchronous processing is enabled.
+   *
+   * @see  #ASYNC_INIT_PARAM
+   */
+  static boolean isAsync(ServletContext servletContext) {
+    return Boolean.parseBoolean(Strings.trim(servletContext.getInitParameter(ASYNC_INIT_PARAM)));
+  }
+
+  /**
+   * The context init parameter that enables concurrent evaluation of the views of each page.  When {@code true}, and
+   * concurrent subrequests are recommended, each view is checked for applicability and its URL found in a separate
+   * subrequest on {@link SemanticCMS#getExecutors()}.  This benefits sites with many views, some of them expensive.
+   * Defaults to {@code false}.
+   */
+  public static final String CONCURRENT_VIEWS_INIT_PARAM = SiteMapServlet.class.getName() + ".concurrentViews";
+
+  /**
+   * Checks if the views of each page should be evaluated concurrently.
+   *
+   * @see  #CONCURRENT_VIEWS_INIT_PARAM
+   */
+  private static boolean useConcurrentViews(
+      ServletContext servletContext,
+      HttpServletRequest req,
+      SortedSet<View> views
+  ) {
+    return
+        views.size() > 1
+            && Boolean.parseBoolean(Strings.trim(servletContext.getInitParameter(CONCURRENT_VIEWS_INIT_PARAM)))
+            && ConcurrencyCoordinator.useConcurrentSubrequests(req);
+  }
+
+  /**
+   * The context init parameter that enables running the concurrent tasks of sitemap generation on virtual threads.
+   * When {@code true}, and running on Java 21 or newer, each concurrent book, subtree, and view is evaluated on its own
+   * virtual thread instead of {@link SemanticCMS#getExecutors()}.  These tasks mostly wait on captures and I/O, so this
+   * allows more concurrency than the number of processors.  Once any task fails, the others are cancelled.  Ignored,
+   * with a warning, on older Java.  Defaults to {@code false}.
+   */
+  public static final String VIRTUAL_THREADS_INIT_PARAM = SiteMapServlet.class.getName() + ".virtualThreads";
+
+  /**
+   * The maximum number of URLs in a single sitemap.
+   * See <a href="https://www.sitemaps.org/protocol.html#index">sitemaps.org - Protocol</a>.
+   */
+  static final int MAX_URLS = 50_000;
+
+  /**
+   * The maximum size of a single sitemap, in bytes, uncompressed.
+   * See <a href="https://www.sitemaps.org/protocol.html#index">sitemaps.org - Protocol</a>.
+   */
+  static final long MAX_BYTES = 50L * 1024 * 1024;
+
+  private static boolean isGzip(HttpServletRequest req) {
+    return req.getServletPath().endsWith(GZIP_SERVLET_PATH);
+  }
 
   private static Book getBook(SemanticCMS semanticCms, HttpServletRequest req) {
     // Find the book for this request
     String servletPath = req.getServletPath();
-    if (!servletPath.endsWith(SERVLET_PATH)) {
+    String bookName;
+    if (servletPath.endsWith(SERVLET_PATH)) {
+      bookName = servletPath.substring(0, servletPath.length() - SERVLET_PATH.length());
+    } else if (servletPath.endsWith(GZIP_SERVLET_PATH)) {
+      bookName = servletPath.substring(0, servletPath.length() - GZIP_SERVLET_PATH.length());
+    } else {
       // Incorrect mapping, treat as not found
       return null;
     }
-    String bookName = servletPath.substring(0, servletPath.length() - SERVLET_PATH.length());
     if (bookName.isEmpty()) {
       bookName = "/";
     }
@@ -88,173 +212,655 @@ public class SiteMapServlet extends HttpServlet {
   }
 
   /**
-   * Gets the most recent of the last modified of all views applicable to the given
-   * book and accessible to the search engines.  If any view returns {@code null}
-   * from {@link View#getLastModified(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)},
-   * the sitemap overall will not have any last modified time.
+   * Finds the URLs of all views applicable to the given page and accessible to the search engines.
+   *
+   * @param  concurrentViews  See {@link #useConcurrentViews(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, java.util.SortedSet)}
+   * @param  viewChecks  incremented for each check of a view actually performed
    *
-   * @return  the most recently last modified or {@code null} if unknown
+   * @return  the URLs, in the order of the views
    */
-  @SuppressWarnings("Convert2Lambda")
-  static ReadableInstant getLastModified(
+  private static List<SiteMapUrl> findUrls(
       final ServletContext servletContext,
       final HttpServletRequest req,
       final HttpServletResponse resp,
       final SortedSet<View> views,
-      final Book book
+      final Page page,
+      boolean concurrentViews,
+      final LongAdder viewChecks
   ) throws ServletException, IOException {
-    // The most recent is kept here, but set to null the first time a missing
-    // per page/view last modified time is found
-    final ReadableInstant[] result = new ReadableInstant[1];
-    CapturePage.traversePagesAnyOrder(servletContext,
+    List<SiteMapUrl> urls = new ArrayList<>(views.size());
+    if (concurrentViews) {
+      // Concurrent implementation
+      final HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(req);
+      final HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(resp);
+      final TempFileContext tempFileContext = TempFileContextEE.get(req);
+      List<Callable<SiteMapUrl>> tasks = new ArrayList<>(views.size());
+      for (final View view : views) {
+        tasks.add(
+            () -> {
+              HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
+              HttpServletResponse subresponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
+              return findUrl(servletContext, subrequest, subresponse, view, page, viewChecks);
+            }
+        );
+      }
+      List<SiteMapUrl> results;
+      try {
+        results = SiteMapTasks.callAll(servletContext, tasks);
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        throw new ServletException(e);
+      } catch (ExecutionException e) {
+        // Maintain expected exception types while not losing stack trace
+        ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+        throw new ServletException(e);
+      }
+      for (SiteMapUrl url : results) {
+        if (url != null) {
+          urls.add(url);
+        }
+      }
+    } else {
+      // Sequential implementation
+      for (View view : views) {
+        SiteMapUrl url = findUrl(servletContext, req, resp, view, page, viewChecks);
+        if (url != null) {
+          urls.add(url);
+        }
+      }
+    }
+    return urls;
+  }
+
+  /**
+   * Finds the URL of the given view of the given page.
+   *
+   * @param  viewChecks  incremented for each call to {@link View#getAllowRobots(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}
+   *                     and {@link View#isApplicable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}
+   *
+   * @return  the URL or {@code null} when the view is not applicable or not accessible to the search engines
+   */
+  private static SiteMapUrl findUrl(
+      ServletContext servletContext,
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      View view,
+      Page page,
+      LongAdder viewChecks
+  ) throws ServletException, IOException {
+    viewChecks.increment();
+    if (!view.getAllowRobots(servletContext, req, resp, page)) {
+      return null;
+    }
+    viewChecks.increment();
+    if (!view.isApplicable(servletContext, req, resp, page)) {
+      return null;
+    }
+    return new SiteMapUrl(
+        true,
+        view.getCanonicalUrl(servletContext, req, resp, page),
+        view.getLastModified(servletContext, req, resp, page)
+    );
+  }
+
+  /**
+   * Finds the URLs of the given page, along with its child pages within the same book.
+   */
+  private static BookIndex.PageUrls findPageUrls(
+      ServletContext servletContext,
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      SortedSet<View> views,
+      Book book,
+      Page page,
+      boolean concurrentViews,
+      LongAdder viewChecks
+  ) throws ServletException, IOException {
+    Set<PageRef> childRefs = new HashSet<>();
+    for (ChildRef childRef : page.getChildRefs()) {
+      PageRef childPageRef = childRef.getPageRef();
+      if (book.equals(childPageRef.getBook())) {
+        childRefs.add(childPageRef);
+      }
+    }
+    return new BookIndex.PageUrls(
+        findUrls(servletContext, req, resp, views, page, concurrentViews, viewChecks),
+        childRefs
+    );
+  }
+
+  /**
+   * Traverses the pages reachable from the given page, finding the URLs of each page.
+   */
+  private static Map<PageRef, BookIndex.PageUrls> traverse(
+      final ServletContext servletContext,
+      final HttpServletRequest req,
+      final HttpServletResponse resp,
+      final SortedSet<View> views,
+      final Book book,
+      PageReferrer root,
+      CapturePage.EdgeFilter edgeFilter,
+      final boolean concurrentViews,
+      final LongAdder viewChecks
+  ) throws ServletException, IOException {
+    final Map<PageRef, BookIndex.PageUrls> pages = new HashMap<>();
+    CapturePage.traversePagesAnyOrder(
+        servletContext,
         req,
         resp,
-        book.getContentRoot(),
-        CaptureLevel.META, new CapturePage.PageHandler<>() {
-          @Override
-          @SuppressFBWarnings("NP_BOOLEAN_RETURN_NULL")
-          public Boolean handlePage(Page page) throws ServletException, IOException {
-            // TODO: Chance for more concurrency here by view?
-            for (View view : views) {
-              if (
-                  view.getAllowRobots(servletContext, req, resp, page)
-                  && view.isApplicable(servletContext, req, resp, page)
-                  ) {
-                ReadableInstant lastModified = view.getLastModified(servletContext, req, resp, page);
-                if (lastModified == null) {
-                  // Stop searching, return null for this book
-                  result[0] = null;
-                  return false;
-                } else {
-                  if (
-                      result[0] == null
-                        || lastModified.compareTo(result[0]) > 0
-                      ) {
-                    result[0] = lastModified;
-                  }
-                }
-              }
-            }
-            return null;
-          }
+        root,
+        CaptureLevel.META,
+        page -> {
+          PageRef pageRef = page.getPageRef();
+          assert pageRef.getBook().equals(book);
+          pages.put(pageRef, findPageUrls(servletContext, req, resp, views, book, page, concurrentViews, viewChecks));
+          return null;
         },
         Page::getChildRefs,
-        childPage -> book.equals(childPage.getBook())
+        edgeFilter
     );
-    return result[0];
+    return pages;
+  }
+
+  /**
+   * Traverses the given book once, finding all URLs of all views applicable to each page and accessible to the
+   * search engines, by page.
+   *
+   * <p>When concurrent subrequests are recommended, the subtree below each child of the content root is traversed
+   * concurrently.  Each page is claimed by the first subtree to reach it, so every page is still visited once and the
+   * URLs are the same as a sequential traversal.</p>
+   *
+   * @param  viewChecks  incremented for each check of a view actually performed
+   *
+   * @see  SiteMapCache#getBookSiteMap(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.util.SortedSet, com.semanticcms.core.model.Book)
+   */
+  static BookIndex createBookIndex(
+      final ServletContext servletContext,
+      final HttpServletRequest req,
+      final HttpServletResponse resp,
+      final SortedSet<View> views,
+      final Book book,
+      final LongAdder viewChecks
+  ) throws ServletException, IOException {
+    final boolean concurrentViews = useConcurrentViews(servletContext, req, views);
+    if (ConcurrencyCoordinator.useConcurrentSubrequests(req)) {
+      Page contentRoot = CapturePage.capturePage(servletContext, req, resp, book.getContentRoot(), CaptureLevel.META);
+      List<PageRef> subtrees = new ArrayList<>();
+      for (ChildRef childRef : contentRoot.getChildRefs()) {
+        PageRef childPageRef = childRef.getPageRef();
+        if (book.equals(childPageRef.getBook())) {
+          subtrees.add(childPageRef);
+        }
+      }
+      int numSubtrees = subtrees.size();
+      if (numSubtrees > 1) {
+        // Concurrent implementation
+        final Set<PageRef> claimed = ConcurrentHashMap.newKeySet();
+        claimed.add(contentRoot.getPageRef());
+        claimed.addAll(subtrees);
+        final CapturePage.EdgeFilter edgeFilter = childPage ->
+            book.equals(childPage.getBook())
+                // Each page is only traversed by the first subtree to reach it
+                && claimed.add(childPage);
+        final HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(req);
+        final HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(resp);
+        final TempFileContext tempFileContext = TempFileContextEE.get(req);
+        List<Callable<Map<PageRef, BookIndex.PageUrls>>> tasks = new ArrayList<>(numSubtrees);
+        for (final PageRef subtree : subtrees) {
+          tasks.add(
+              () -> {
+                HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
+                HttpServletResponse subresponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
+                return traverse(
+                    servletContext,
+                    subrequest,
+                    subresponse,
+                    views,
+                    book,
+                    subtree,
+                    edgeFilter,
+                    concurrentViews,
+                    viewChecks
+                );
+              }
+          );
+        }
+        List<Map<PageRef, BookIndex.PageUrls>> results;
+        try {
+          results = SiteMapTasks.callAll(servletContext, tasks);
+        } catch (InterruptedException e) {
+          // Restore the interrupted status
+          Thread.currentThread().interrupt();
+          throw new ServletException(e);
+        } catch (ExecutionException e) {
+          // Maintain expected exception types while not losing stack trace
+          ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+          throw new ServletException(e);
+        }
+        Map<PageRef, BookIndex.PageUrls> pages = new HashMap<>();
+        pages.put(
+            contentRoot.getPageRef(),
+            findPageUrls(servletContext, req, resp, views, book, contentRoot, concurrentViews, viewChecks)
+        );
+        for (Map<PageRef, BookIndex.PageUrls> result : results) {
+          pages.putAll(result);
+        }
+        return new BookIndex(pages);
+      }
+    }
+    // Sequential implementation
+    return new BookIndex(traverse(
+        servletContext,
+        req,
+        resp,
+        views,
+        book,
+        book.getContentRoot(),
+        childPage -> book.equals(childPage.getBook()),
+        concurrentViews,
+        viewChecks
+    ));
   }
 
   /**
-   * The response is not given to getLastModified, but we need it for captures to get
-   * the last modified.
+   * Creates the sitemap from the URLs of a book.
+   *
+   * @param  urls  no defensive copy is made, the caller must not modify after this call
    */
-  private static final ScopeEE.Request.Attribute<HttpServletResponse> RESPONSE_IN_REQUEST_ATTRIBUTE =
-      ScopeEE.REQUEST.attribute(SiteMapServlet.class.getName() + ".responseInRequest");
+  static BookSiteMap createBookSiteMap(SortedSet<SiteMapUrl> urls) throws IOException {
+    return BookSiteMap.create(split(urls));
+  }
 
+  /**
+   * Finds the URLs of one page again, updating the index of its book.
+   *
+   * @param  changes  the changes to record into
+   * @param  viewChecks  incremented for each check of a view actually performed
+   *
+   * @return  {@code true} when updated, or {@code false} when the book must be traversed again, including when the
+   *          page can no longer be captured
+   *
+   * @see  BookIndex#update(com.semanticcms.core.model.PageRef, com.semanticcms.core.sitemap.BookIndex.PageUrls, com.semanticcms.core.sitemap.BookIndex.Changes)
+   */
+  static boolean updatePage(
+      ServletContext servletContext,
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      SortedSet<View> views,
+      Book book,
+      BookIndex index,
+      PageRef pageRef,
+      BookIndex.Changes changes,
+      LongAdder viewChecks
+  ) {
+    BookIndex.PageUrls pageUrls;
+    try {
+      Page page = CapturePage.capturePage(servletContext, req, resp, pageRef, CaptureLevel.META);
+      pageUrls = findPageUrls(
+          servletContext,
+          req,
+          resp,
+          views,
+          book,
+          page,
+          useConcurrentViews(servletContext, req, views),
+          viewChecks
+      );
+    } catch (ServletException | IOException e) {
+      // Page may have been removed, any error will be reported by the traversal
+      return false;
+    }
+    return index.update(pageRef, pageUrls, changes);
+  }
+
+  /**
+   * Splits the URLs into shards within the limits of the sitemap protocol.
+   * URLs are assigned to shards in order by loc, so that a change in last modified time only changes its own shard.
+   */
+  static List<SortedSet<SiteMapUrl>> split(SortedSet<SiteMapUrl> urls) throws IOException {
+    if (urls.size() <= MAX_URLS) {
+      // Only measure when might exceed the size limit
+      long maxLocLength = 0;
+      for (SiteMapUrl url : urls) {
+        maxLocLength = Math.max(maxLocLength, url.getLoc().length());
+      }
+      // Allows up to 9 times expansion from encoding, such as one character to three percent-encoded UTF-8 bytes
+      if (urls.size() * (maxLocLength * 9 + 1024) <= MAX_BYTES) {
+        return Collections.singletonList(urls);
+      }
+    }
+    SiteMapWriter measure = new SiteMapWriter(OutputStream.nullOutputStream());
+    final long fixedSize = (long) HEADER.length + FOOTER.length;
+    List<SiteMapUrl> byLoc = new ArrayList<>(urls);
+    byLoc.sort(BookSiteMap.SHARD_ORDER);
+    List<SortedSet<SiteMapUrl>> shards = new ArrayList<>();
+    SortedSet<SiteMapUrl> shard = new TreeSet<>();
+    long size = fixedSize;
+    for (SiteMapUrl url : byLoc) {
+      long start = measure.getCount();
+      measure.writeUrl(url);
+      long urlSize = measure.getCount() - start;
+      if (
+          !shard.isEmpty()
+              && (shard.size() >= MAX_URLS || size + urlSize > MAX_BYTES)
+      ) {
+        shards.add(shard);
+        shard = new TreeSet<>();
+        size = fixedSize;
+      }
+      shard.add(url);
+      size += urlSize;
+    }
+    if (shards.isEmpty()) {
+      // Within limits after measuring
+      return Collections.singletonList(urls);
+    }
+    shards.add(shard);
+    return shards;
+  }
+
+  /**
+   * Discards any cached sitemap of the given book.  This should be called when the pages of a book are known to have
+   * changed, otherwise cached sitemaps are only updated once expired.
+   *
+   * @see  SiteMapCache#TTL_INIT_PARAM
+   */
+  public static void invalidate(ServletContext servletContext, Book book) {
+    SiteMapCache.getInstance(servletContext).invalidate(book);
+  }
+
+  /**
+   * Marks a single page of any cached sitemap as changed.  On the next request, only the changed pages are captured
+   * again, instead of traversing the whole book.  When a changed page has different child pages, such as when pages
+   * are added or removed, the book is traversed again.
+   *
+   * @see  SiteMapCache#TTL_INIT_PARAM
+   */
+  public static void invalidate(ServletContext servletContext, PageRef pageRef) {
+    SiteMapCache.getInstance(servletContext).invalidate(pageRef);
+  }
+
+  /**
+   * Discards all cached sitemaps.
+   *
+   * @see  #invalidate(javax.servlet.ServletContext, com.semanticcms.core.model.Book)
+   */
+  public static void invalidateAll(ServletContext servletContext) {
+    SiteMapCache.getInstance(servletContext).invalidateAll();
+  }
+
+  /**
+   * Gets the requested page of a sitemap.
+   *
+   * @return  the page or {@code null} when not found
+   *
+   * @see  #PAGE_PARAM
+   */
+  private static BookSiteMap.Shard getShard(HttpServletRequest req, BookSiteMap siteMap) {
+    String page = req.getParameter(PAGE_PARAM);
+    int index;
+    if (page == null) {
+      index = 0;
+    } else {
+      try {
+        index = Integer.parseInt(page) - 1;
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    List<BookSiteMap.Shard> shards = siteMap.getShards();
+    return index >= 0 && index < shards.size() ? shards.get(index) : null;
+  }
+
+  /**
+   * The requested page of the sitemap of the book is resolved once at the beginning of the request and
+   * used by both {@link #getLastModified(javax.servlet.http.HttpServletRequest)}
+   * and {@link #doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)}.
+   * This is {@code null} when the book or page is not found.
+   */
+  private static final ScopeEE.Request.Attribute<BookSiteMap.Shard> SHARD_ATTRIBUTE =
+      ScopeEE.REQUEST.attribute(SiteMapServlet.class.getName() + ".shard");
+
+  /**
+   * The sitemap of the book computed asynchronously, until the request is dispatched again.
+   *
+   * @see  #ASYNC_INIT_PARAM
+   */
+  private static final ScopeEE.Request.Attribute<SiteMapAsync.Outcome<BookSiteMap>> SITEMAP_OUTCOME_ATTRIBUTE =
+      ScopeEE.REQUEST.attribute(SiteMapServlet.class.getName() + ".sitemapOutcome");
+
+  /**
+   * Measured by any {@link SiteMapListener}.
+   */
   @Override
   protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-    try (Attribute.OldValue old = RESPONSE_IN_REQUEST_ATTRIBUTE.context(req).init(resp)) {
+    SiteMapListeners.getInstance(getServletContext()).service(req, resp, this::doService);
+  }
+
+  /**
+   * A sitemap {@link SiteMapGenerator generated at build time} is served as-is.  When too many sitemaps are being
+   * computed, a sitemap that is not cached is responded to with {@code 503 Service Unavailable}, see
+   * {@link SiteMapAdmission}.
+   */
+  @SuppressWarnings("try")
+  private void doService(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    final ServletContext servletContext = getServletContext();
+    if (StaticSiteMaps.getInstance(servletContext).serve(req, resp, CONTENT_TYPE)) {
+      return;
+    }
+    if (isStreaming(servletContext)) {
+      // Nothing is known before the traversal
+      super.service(req, resp);
+      return;
+    }
+    SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
+    final Book book = getBook(semanticCms, req);
+    BookSiteMap.Shard shard;
+    if (book == null) {
+      shard = null;
+    } else {
+      final SiteMapCache cache = SiteMapCache.getInstance(servletContext);
+      BookSiteMap siteMap = req.getDispatcherType() == DispatcherType.ASYNC
+          ? null
+          : cache.getCachedBookSiteMap(servletContext, req, book);
+      if (siteMap == null) {
+        final SortedSet<View> views = semanticCms.getViews();
+        try {
+          siteMap = SiteMapAsync.compute(
+              req,
+              resp,
+              SITEMAP_OUTCOME_ATTRIBUTE,
+              (subrequest, subresponse) -> cache.getBookSiteMap(servletContext, subrequest, subresponse, views, book)
+          );
+        } catch (SiteMapAdmission.OverloadedException e) {
+          SiteMapAdmission.getInstance(servletContext).sendOverloaded(resp);
+          return;
+        }
+        if (siteMap == null) {
+          // Dispatched again once computed
+          return;
+        }
+      }
+      shard = getShard(req, siteMap);
+    }
+    if (shard != null && ETag.notModified(req, resp, shard.getETag(isGzip(req)))) {
+      return;
+    }
+    // Only closed, restoring any previous shard once serviced
+    try (Attribute.OldValue old = SHARD_ATTRIBUTE.context(req).init(shard)) {
       super.service(req, resp);
     }
   }
 
   @Override
   protected long getLastModified(HttpServletRequest req) {
-    ServletContext servletContext = getServletContext();
-    SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
-    Book book = getBook(semanticCms, req);
-    if (book == null) {
-      log("Book not found: " + req.getServletPath());
+    if (isStreaming(getServletContext())) {
+      return -1;
+    }
+    BookSiteMap.Shard shard = SHARD_ATTRIBUTE.context(req).get();
+    if (shard == null) {
+      log("Sitemap not found: " + req.getServletPath());
+      return -1;
+    } else if (ETag.hasIfNoneMatch(req)) {
+      // If-None-Match takes precedence over If-Modified-Since
       return -1;
     } else {
-      try {
-        ReadableInstant lastModified = getLastModified(
-            getServletContext(),
-            req,
-            RESPONSE_IN_REQUEST_ATTRIBUTE.context(req).get(),
-            semanticCms.getViews(),
-            book
-        );
-        return lastModified == null ? -1 : SiteMapIndexServlet.truncateToSecond(lastModified.getMillis());
-      } catch (ServletException | IOException e) {
-        log("getLastModified failed", e);
-        return -1;
-      }
+      ReadableInstant lastModified = shard.getLastModified();
+      return lastModified == null ? -1 : SiteMapIndexServlet.truncateToSecond(lastModified.getMillis());
     }
   }
 
-  @Override
-  protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+  /**
+   * Writes each URL as its page is traversed.
+   *
+   * @see  #STREAMING_INIT_PARAM
+   */
+  private void doGetStreaming(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
     final ServletContext servletContext = getServletContext();
     SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
     final Book book = getBook(semanticCms, req);
-    if (book == null) {
+    String page = req.getParameter(PAGE_PARAM);
+    if (book == null || (page != null && !"1".equals(page))) {
       resp.sendError(HttpServletResponse.SC_NOT_FOUND);
       return;
     }
     final SortedSet<View> views = semanticCms.getViews();
+    final boolean concurrentViews = useConcurrentViews(servletContext, req, views);
 
-    final SortedSet<SiteMapUrl> urls = new TreeSet<>();
-    CapturePage.traversePagesAnyOrder(
+    // Each URL is rendered to this buffer first, to be measured against the protocol limits
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final SiteMapWriter urlOut = new SiteMapWriter(buffer);
+    final long[] size = {(long) HEADER.length + FOOTER.length};
+    final int[] count = {0};
+    final int[] pages = {0};
+    final int[] urlsWithoutLastmod = {0};
+    final LongAdder viewChecks = new LongAdder();
+    // A URL may be found by more than one page, but is written only once
+    final Set<String> seen = new HashSet<>();
+    final long startNanos = System.nanoTime();
+
+    final boolean gzip = isGzip(req);
+    final SiteMapWriter out = new SiteMapWriter(SiteMapIndexServlet.startResponse(resp, gzip, CONTENT_TYPE));
+
+    out.write(HEADER);
+    @SuppressWarnings("Convert2Lambda") // Cannot put @SuppressFBWarnings on lambda
+    Boolean truncated = CapturePage.traversePagesAnyOrder(
         servletContext,
         req,
         resp,
         book.getContentRoot(),
         CaptureLevel.META,
-        page -> {
-          assert page.getPageRef().getBook().equals(book);
-          // TODO: Concurrency: Any benefit to processing each view concurrently?  allowRobots and isApplicable can be expensive but should also benefit from capture caching
-          for (View view : views) {
-            if (
-                view.getAllowRobots(servletContext, req, resp, page)
-                    && view.isApplicable(servletContext, req, resp, page)
-            ) {
-              urls.add(
-                  new SiteMapUrl(
-                      true,
-                      view.getCanonicalUrl(servletContext, req, resp, page),
-                      view.getLastModified(servletContext, req, resp, page)
-                  )
-              );
+        new CapturePage.PageHandler<>() {
+          @Override
+          @SuppressFBWarnings("NP_BOOLEAN_RETURN_NULL")
+          public Boolean handlePage(Page page) throws ServletException, IOException {
+            assert page.getPageRef().getBook().equals(book);
+            pages[0]++;
+            for (SiteMapUrl url : findUrls(servletContext, req, resp, views, page, concurrentViews, viewChecks)) {
+              if (seen.contains(url.getLoc())) {
+                continue;
+              }
+              buffer.reset();
+              urlOut.writeUrl(url);
+              urlOut.flush();
+              int urlSize = buffer.size();
+              if (count[0] >= MAX_URLS || size[0] + urlSize > MAX_BYTES) {
+                // Stop traversal
+                return true;
+              }
+              buffer.writeTo(out);
+              seen.add(url.getLoc());
+              count[0]++;
+              size[0] += urlSize;
+              if (url.getLastmod() == null) {
+                urlsWithoutLastmod[0]++;
+              }
             }
+            return null;
           }
-          return null;
         },
         Page::getChildRefs,
         childPage -> book.equals(childPage.getBook())
     );
+    out.write(FOOTER);
+    finish(out, gzip);
+    SiteMapListeners listeners = SiteMapListeners.getInstance(servletContext);
+    if (listeners.isEnabled()) {
+      listeners.bookTraversed(
+          book,
+          System.nanoTime() - startNanos,
+          pages[0],
+          viewChecks.intValue(),
+          count[0],
+          urlsWithoutLastmod[0]
+      );
+    }
+    if (truncated != null) {
+      log("Streaming sitemap truncated at the protocol limits, disable " + STREAMING_INIT_PARAM
+          + " to split into pages: " + req.getServletPath());
+    }
+  }
 
-    final DateFormat iso8601 = SiteMapIndexServlet.createIso8601Format();
+  private static void writeSitemap(SortedSet<SiteMapUrl> urls, SiteMapWriter out) throws IOException {
+    out.write(HEADER);
+    for (SiteMapUrl url : urls) {
+      out.writeUrl(url);
+    }
+    out.write(FOOTER);
+  }
 
-    resp.resetBuffer();
-    resp.setContentType(CONTENT_TYPE);
-    resp.setCharacterEncoding(ENCODING.name());
-    PrintWriter out = resp.getWriter();
+  /**
+   * Completes the response.  The compressed stream must be finished, while otherwise the response is left open so
+   * the container may still set the content length.
+   */
+  static void finish(SiteMapWriter out, boolean gzip) throws IOException {
+    if (gzip) {
+      out.close();
+    } else {
+      out.flushBuffer();
+    }
+  }
 
-    out.println("<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>");
-    out.print("<!-- ");
-    encodeTextInXhtml(GENERATED_COMMENT, out);
-    out.println(" -->");
-    out.println("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
-    for (SiteMapUrl url : urls) {
-      out.println("  <url>");
-      out.print("    <loc>");
-      assert url.isAbsolute();
-      // RFC 3986 US-ASCII, although RFC 3987 might be possible as per https://www.google.com/sitemaps/faq.html#faq_xml_encoding
-      URIEncoder.encodeURI(
-          url.getLoc(),
-          textInXhtmlEncoder,
-          out
-      );
-      out.println("</loc>");
-      ReadableInstant lastmod = url.getLastmod();
-      if (lastmod != null) {
-        out.print("    <lastmod>");
-        encodeTextInXhtml(iso8601.format(new Date(lastmod.getMillis())), out);
-        out.println("</lastmod>");
+  /**
+   * Gets the rendered sitemap of a shard, rendering it once per cached shard.
+   */
+  private static byte[] getBytes(BookSiteMap.Shard shard, boolean gzip) throws IOException {
+    byte[] bytes = shard.getBytes(gzip);
+    if (bytes == null) {
+      bytes = SiteMapIndexServlet.render(gzip, out -> writeSitemap(shard.getUrls(), out));
+      shard.setBytes(gzip, bytes);
+    }
+    return bytes;
+  }
+
+  @Override
+  @SuppressWarnings("try")
+  protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+    final ServletContext servletContext = getServletContext();
+    if (isStreaming(servletContext)) {
+      SiteMapAdmission admission = SiteMapAdmission.getInstance(servletContext);
+      try (SiteMapAdmission.Permit permit = admission.tryAcquire(req)) {
+        if (permit == null) {
+          admission.sendOverloaded(resp);
+        } else {
+          doGetStreaming(req, resp);
+        }
       }
-      out.println("  </url>");
+      return;
+    }
+    BookSiteMap.Shard shard = SHARD_ATTRIBUTE.context(req).get();
+    if (shard == null) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    boolean gzip = isGzip(req);
+    if (SiteMapCache.getInstance(servletContext).isEnabled()) {
+      SiteMapIndexServlet.writeBytes(resp, gzip, CONTENT_TYPE, getBytes(shard, gzip));
+    } else {
+      SiteMapWriter out = new SiteMapWriter(SiteMapIndexServlet.startResponse(resp, gzip, CONTENT_TYPE));
+      writeSitemap(shard.getUrls(), out);
+      finish(out, gzip);
     }
-    out.println("</urlset>");
   }
 }
@@ -0,0 +1,259 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.semanticcms.core.servlet.View;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.joda.time.Instant;
+import org.joda.time.ReadableInstant;
+
+/**
+ * Persists the URLs of computed sitemaps to disk, so a restarted application may serve them without first traversing
+ * every book.
+ *
+ * <p>Each sitemap is stored in its own file, named by a hash of the book and absolute URL of the context root.  The
+ * file records the book, context root, and views it was computed for, along with the time its computation began, and
+ * is ignored when any do not match.</p>
+ *
+ * <p>The context root derives from the {@code Host} header provided by the client, so the number of files is bounded.
+ * After each write, expired files are deleted, then the least recently written beyond the maximum.</p>
+ *
+ * @see  SiteMapCache#PERSIST_INIT_PARAM
+ */
+final class SiteMapStore {
+
+  private static final Logger logger = Logger.getLogger(SiteMapStore.class.getName());
+
+  /**
+   * Identifies the file format, incremented on any incompatible change.
+   */
+  private static final int VERSION = 2;
+
+  private static final String SUFFIX = ".sitemap";
+
+  /**
+   * Stored in place of an unknown last modified time.
+   */
+  private static final long NO_LASTMOD = Long.MIN_VALUE;
+
+  /**
+   * The URLs read from disk, along with the time their computation began.
+   */
+  static final class Stored {
+
+    private final SortedSet<SiteMapUrl> urls;
+    private final long computedMillis;
+
+    private Stored(SortedSet<SiteMapUrl> urls, long computedMillis) {
+      this.urls = urls;
+      this.computedMillis = computedMillis;
+    }
+
+    /**
+     * Gets the URLs, which the caller may take ownership of.
+     */
+    SortedSet<SiteMapUrl> getUrls() {
+      return urls;
+    }
+
+    /**
+     * Gets the time the computation of the sitemap began, which is before any change it does not include.
+     */
+    long getComputedMillis() {
+      return computedMillis;
+    }
+  }
+
+  private final Path directory;
+  private final long ttlMillis;
+  private final int maxFiles;
+
+  /**
+   * Creates a store of files within the given directory, which is created on first write.
+   *
+   * @param  ttlMillis  files written longer ago are deleted
+   * @param  maxFiles  the maximum number of files kept
+   */
+  SiteMapStore(Path directory, long ttlMillis, int maxFiles) {
+    this.directory = directory;
+    this.ttlMillis = ttlMillis;
+    this.maxFiles = maxFiles;
+  }
+
+  /**
+   * Gets the names of the views, which must match for a stored sitemap to be used.
+   */
+  private static String getViewNames(Collection<View> views) {
+    StringBuilder viewNames = new StringBuilder();
+    for (View view : views) {
+      if (viewNames.length() > 0) {
+        viewNames.append(',');
+      }
+      viewNames.append(view.getName());
+    }
+    return viewNames.toString();
+  }
+
+  private Path getPath(String bookName, String rootUrl) {
+    MessageDigest digest = ETag.newDigest();
+    ETag.update(digest, bookName);
+    ETag.update(digest, rootUrl);
+    return directory.resolve(ETag.getHash(digest) + SUFFIX);
+  }
+
+  /**
+   * Reads the stored sitemap.
+   *
+   * @return  the URLs or {@code null} when not stored, unreadable, or stored for a different book, context root, or
+   *          views
+   */
+  Stored read(String bookName, String rootUrl, Collection<View> views) {
+    Path path = getPath(bookName, rootUrl);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (
+          in.readInt() != VERSION
+              || !bookName.equals(in.readUTF())
+              || !rootUrl.equals(in.readUTF())
+              || !getViewNames(views).equals(in.readUTF())
+      ) {
+        return null;
+      }
+      long computedMillis = in.readLong();
+      int count = in.readInt();
+      SortedSet<SiteMapUrl> urls = new TreeSet<>();
+      for (int i = 0; i < count; i++) {
+        boolean absolute = in.readBoolean();
+        String loc = in.readUTF();
+        long lastmod = in.readLong();
+        urls.add(new SiteMapUrl(absolute, loc, lastmod == NO_LASTMOD ? null : new Instant(lastmod)));
+      }
+      return new Stored(urls, computedMillis);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to read stored sitemap: " + path, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the sitemap, replacing any previously stored.  Errors are logged and otherwise ignored, since the
+   * sitemap will simply be computed again.
+   *
+   * @param  computedMillis  the time the computation of the sitemap began
+   */
+  void write(
+      String bookName,
+      String rootUrl,
+      Collection<View> views,
+      Collection<SiteMapUrl> urls,
+      long computedMillis
+  ) {
+    Path path = getPath(bookName, rootUrl);
+    try {
+      Files.createDirectories(directory);
+      Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          out.writeInt(VERSION);
+          out.writeUTF(bookName);
+          out.writeUTF(rootUrl);
+          out.writeUTF(getViewNames(views));
+          out.writeLong(computedMillis);
+          out.writeInt(urls.size());
+          for (SiteMapUrl url : urls) {
+            out.writeBoolean(url.isAbsolute());
+            out.writeUTF(url.getLoc());
+            ReadableInstant lastmod = url.getLastmod();
+            out.writeLong(lastmod == null ? NO_LASTMOD : lastmod.getMillis());
+          }
+        }
+        try {
+          Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to store sitemap: " + path, e);
+    }
+    prune();
+  }
+
+  /**
+   * Deletes the files written longer ago than the time-to-live, then the least recently written beyond the maximum
+   * number of files.  Errors are logged and otherwise ignored.
+   */
+  void prune() {
+    List<Map.Entry<Path, Long>> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path file : stream) {
+        try {
+          files.add(Map.entry(file, Files.getLastModifiedTime(file).toMillis()));
+        } catch (NoSuchFileException e) {
+          // Deleted concurrently
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to list stored sitemaps: " + directory, e);
+      return;
+    }
+    // Most recently written first
+    files.sort(Map.Entry.<Path, Long>comparingByValue().reversed());
+    long expiredMillis = System.currentTimeMillis() - ttlMillis;
+    for (int i = 0; i < files.size(); i++) {
+      Map.Entry<Path, Long> file = files.get(i);
+      if (i >= maxFiles || file.getValue() <= expiredMillis) {
+        try {
+          Files.deleteIfExists(file.getKey());
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Unable to delete stored sitemap: " + file.getKey(), e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.lang.Strings;
+import com.aoapps.lang.i18n.ThreadLocale;
+import com.semanticcms.core.servlet.SemanticCMS;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * Runs the concurrent tasks of sitemap generation, such as per book, per subtree, and per view.  By default, they run
+ * on {@link SemanticCMS#getExecutors()}.  On Java 21 or newer, they may instead each run on its own virtual thread.
+ *
+ * @see  SiteMapServlet#VIRTUAL_THREADS_INIT_PARAM
+ */
+final class SiteMapTasks {
+
+  private static final Logger logger = Logger.getLogger(SiteMapTasks.class.getName());
+
+  /** Make no instances. */
+  private SiteMapTasks() {
+    throw new AssertionError();
+  }
+
+  private static final String THREAD_NAME_PREFIX = SiteMapTasks.class.getName() + '-';
+
+  /**
+   * Creates virtual threads, or is {@code null} when not supported by this Java runtime.  Found by reflection, since
+   * this project is compiled for Java 11.
+   */
+  private static final ThreadFactory VIRTUAL_THREAD_FACTORY;
+
+  static {
+    ThreadFactory factory;
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 1L);
+      factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      factory = null;
+    }
+    VIRTUAL_THREAD_FACTORY = factory;
+  }
+
+  /**
+   * Logs once when virtual threads are enabled but not supported.
+   */
+  private static volatile boolean warned;
+
+  /**
+   * Checks if the tasks run on virtual threads.
+   *
+   * @see  SiteMapServlet#VIRTUAL_THREADS_INIT_PARAM
+   */
+  static boolean useVirtualThreads(ServletContext servletContext) {
+    if (!Boolean.parseBoolean(Strings.trim(servletContext.getInitParameter(SiteMapServlet.VIRTUAL_THREADS_INIT_PARAM)))) {
+      return false;
+    }
+    if (VIRTUAL_THREAD_FACTORY == null) {
+      if (!warned) {
+        warned = true;
+        logger.warning(
+            "Virtual threads not supported by Java " + Runtime.version().feature() + ", ignoring "
+                + SiteMapServlet.VIRTUAL_THREADS_INIT_PARAM
+        );
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Calls all tasks concurrently, waiting for all to complete.
+   *
+   * @return  the results, in the order of the tasks
+   *
+   * @see  com.aoapps.concurrent.Executor#callAll(java.util.Collection)
+   */
+  static <T> List<T> callAll(ServletContext servletContext, Collection<? extends Callable<? extends T>> tasks)
+      throws InterruptedException, ExecutionException {
+    if (useVirtualThreads(servletContext)) {
+      return callAll(VIRTUAL_THREAD_FACTORY, tasks);
+    } else {
+      return SemanticCMS.getInstance(servletContext).getExecutors().getPerProcessor().callAll(tasks);
+    }
+  }
+
+  /**
+   * Calls all tasks concurrently, each on a new thread from the given factory.
+   *
+   * <p>The tasks are structured: once any task fails, or the calling thread is interrupted, all other tasks are
+   * cancelled and interrupted.  In all cases, no task is still running once this method returns.</p>
+   *
+   * <p>Each task runs with the {@link ThreadLocale} of the calling thread, as on {@link SemanticCMS#getExecutors()}.</p>
+   *
+   * @return  the results, in the order of the tasks
+   *
+   * @throws  ExecutionException  the first task to fail, in the order failed
+   */
+  static <T> List<T> callAll(ThreadFactory threadFactory, Collection<? extends Callable<? extends T>> tasks)
+      throws InterruptedException, ExecutionException {
+    int size = tasks.size();
+    BlockingQueue<Future<T>> completed = new ArrayBlockingQueue<>(Math.max(size, 1));
+    List<FutureTask<T>> futures = new ArrayList<>(size);
+    final Locale locale = ThreadLocale.get();
+    for (Callable<? extends T> task : tasks) {
+      futures.add(new FutureTask<T>(() -> ThreadLocale.call(locale, Exception.class, task::call)) {
+        @Override
+        protected void done() {
+          completed.add(this);
+        }
+      });
+    }
+    List<Thread> threads = new ArrayList<>(size);
+    try {
+      for (FutureTask<T> future : futures) {
+        Thread thread = threadFactory.newThread(future);
+        thread.start();
+        threads.add(thread);
+      }
+      for (int i = 0; i < size; i++) {
+        Future<T> future = completed.take();
+        if (!future.isCancelled()) {
+          // Throws on the first failure
+          future.get();
+        }
+      }
+      List<T> results = new ArrayList<>(size);
+      for (FutureTask<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } finally {
+      // Stops any tasks still running, then waits for all to have stopped
+      for (FutureTask<T> future : futures) {
+        future.cancel(true);
+      }
+      boolean interrupted = false;
+      for (Thread thread : threads) {
+        while (true) {
+          try {
+            thread.join();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
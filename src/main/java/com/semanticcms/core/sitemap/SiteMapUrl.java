@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
- * Copyright (C) 2019, 2020, 2021, 2022, 2023, 2024  AO Industries, Inc.
+ * Copyright (C) 2019, 2020, 2021, 2022, 2023, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -42,6 +42,9 @@ class SiteMapUrl implements Comparable<SiteMapUrl> {
     this.lastmod = lastmod;
   }
 
+  /**
+   * Is the loc an absolute URL?  When not absolute, the loc is a path within the current context.
+   */
   boolean isAbsolute() {
     return absolute;
   }
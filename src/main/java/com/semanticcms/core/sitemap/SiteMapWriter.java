@@ -0,0 +1,313 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static com.aoapps.encoding.TextInXhtmlEncoder.encodeTextInXhtml;
+
+import com.aoapps.net.URIEncoder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import org.joda.time.ReadableInstant;
+
+/**
+ * Buffered UTF-8 output of sitemaps and sitemap indexes, with the markup written from pre-encoded fragments.
+ *
+ * <p>Locations are encoded to RFC 3986 US-ASCII then escaped directly to bytes, and last modified times are formatted
+ * directly to bytes, remembering the most recent.  This avoids per-URL allocation of dates, formatters, and encoders
+ * so that rendering is dominated by I/O.</p>
+ *
+ * <p>This is not thread-safe.</p>
+ */
+final class SiteMapWriter extends OutputStream {
+
+  /**
+   * The line separator, which does not vary by platform so the output is reproducible.
+   */
+  private static final char NEWLINE = '\n';
+
+  static final Charset ENCODING = StandardCharsets.UTF_8;
+
+  private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>";
+
+  static final byte[] URL_OPEN = toBytes("  <url>" + NEWLINE + "    <loc>");
+
+  static final byte[] URL_CLOSE = toBytes("  </url>" + NEWLINE);
+
+  static final byte[] SITEMAP_OPEN = toBytes("  <sitemap>" + NEWLINE + "    <loc>");
+
+  static final byte[] SITEMAP_CLOSE = toBytes("  </sitemap>" + NEWLINE);
+
+  private static final byte[] LOC_CLOSE = toBytes("</loc>" + NEWLINE);
+
+  private static final byte[] LASTMOD_OPEN = toBytes("    <lastmod>");
+
+  private static final byte[] LASTMOD_CLOSE = toBytes("</lastmod>" + NEWLINE);
+
+  private static final byte[] AMP = toBytes("&amp;");
+
+  private static final byte[] LT = toBytes("&lt;");
+
+  private static final byte[] GT = toBytes("&gt;");
+
+  /**
+   * Formats times outside the four-digit years handled directly.
+   */
+  private static final DateTimeFormatter ISO_8601 =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Renders a document.
+   */
+  @FunctionalInterface
+  interface Renderer {
+    void render(SiteMapWriter out) throws IOException;
+  }
+
+  static byte[] toBytes(String value) {
+    return value.getBytes(ENCODING);
+  }
+
+  /**
+   * Creates the fixed header of a document.
+   *
+   * @param  generatedComment  the comment identifying the generator
+   * @param  rootElement  the opening tag of the root element
+   */
+  static byte[] createHeader(String generatedComment, String rootElement) {
+    StringBuilder header = new StringBuilder();
+    header.append(XML_DECLARATION).append(NEWLINE);
+    header.append("<!-- ");
+    try {
+      encodeTextInXhtml(generatedComment, header);
+    } catch (IOException e) {
+      throw new AssertionError("IOException should not occur on StringBuilder", e);
+    }
+    header.append(" -->").append(NEWLINE);
+    header.append(rootElement).append(NEWLINE);
+    return toBytes(header.toString());
+  }
+
+  /**
+   * Creates the fixed footer of a document.
+   *
+   * @param  rootElement  the name of the root element
+   */
+  static byte[] createFooter(String rootElement) {
+    return toBytes("</" + rootElement + '>' + NEWLINE);
+  }
+
+  private final OutputStream out;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int pos;
+  private long count;
+
+  /**
+   * The epoch second of the most recently formatted last modified time.
+   */
+  private long lastmodSecond;
+
+  /**
+   * The formatted bytes of {@link #lastmodSecond} or {@code null} when none yet formatted.
+   */
+  private byte[] lastmodBytes;
+
+  SiteMapWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Gets the total number of bytes written.
+   */
+  long getCount() {
+    return count;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (pos == BUFFER_SIZE) {
+      flushBuffer();
+    }
+    buffer[pos++] = (byte) b;
+    count++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len > BUFFER_SIZE - pos) {
+      flushBuffer();
+      if (len > BUFFER_SIZE) {
+        out.write(b, off, len);
+        count += len;
+        return;
+      }
+    }
+    System.arraycopy(b, off, buffer, pos, len);
+    pos += len;
+    count += len;
+  }
+
+  /**
+   * Writes any buffered output without flushing the underlying stream.
+   */
+  void flushBuffer() throws IOException {
+    if (pos > 0) {
+      out.write(buffer, 0, pos);
+      pos = 0;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flushBuffer();
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes one entry, such as a {@code <url>} of a sitemap or a {@code <sitemap>} of a sitemap index.
+   *
+   * @param  open  the opening fragment, ending with the opening {@code <loc>}
+   * @param  encodedLoc  the location, already encoded to RFC 3986 US-ASCII
+   * @param  lastmod  the optional last modified time
+   * @param  close  the closing fragment
+   */
+  void writeEntry(byte[] open, String encodedLoc, ReadableInstant lastmod, byte[] close) throws IOException {
+    write(open);
+    writeText(encodedLoc);
+    write(LOC_CLOSE);
+    if (lastmod != null) {
+      write(LASTMOD_OPEN);
+      writeLastmod(lastmod.getMillis());
+      write(LASTMOD_CLOSE);
+    }
+    write(close);
+  }
+
+  /**
+   * Writes a {@code <url>} of a sitemap.
+   */
+  void writeUrl(SiteMapUrl url) throws IOException {
+    assert url.isAbsolute();
+    writeEntry(
+        URL_OPEN,
+        // RFC 3986 US-ASCII, although RFC 3987 might be possible as per https://www.google.com/sitemaps/faq.html#faq_xml_encoding
+        URIEncoder.encodeURI(url.getLoc()),
+        url.getLastmod(),
+        URL_CLOSE
+    );
+  }
+
+  /**
+   * Writes text escaped for XML.  The text is expected to be US-ASCII, but any other characters are encoded in UTF-8.
+   */
+  private void writeText(String text) throws IOException {
+    int len = text.length();
+    for (int i = 0; i < len; i++) {
+      char ch = text.charAt(i);
+      switch (ch) {
+        case '&':
+          write(AMP);
+          break;
+        case '<':
+          write(LT);
+          break;
+        case '>':
+          write(GT);
+          break;
+        default:
+          if (ch < 0x80) {
+            write(ch);
+          } else {
+            // Not expected after URI encoding
+            int end = i + 1;
+            while (end < len && text.charAt(end) >= 0x80) {
+              end++;
+            }
+            write(toBytes(text.substring(i, end)));
+            i = end - 1;
+          }
+      }
+    }
+  }
+
+  /**
+   * Writes a last modified time in ISO 8601 format, truncated to the second.  The most recent time is remembered,
+   * since many URLs often share the same last modified time.
+   */
+  private void writeLastmod(long millis) throws IOException {
+    long second = Math.floorDiv(millis, 1000);
+    if (lastmodBytes == null || second != lastmodSecond) {
+      lastmodBytes = formatLastmod(second);
+      lastmodSecond = second;
+    }
+    write(lastmodBytes);
+  }
+
+  /**
+   * Formats the given epoch second as {@code yyyy-MM-dd'T'HH:mm:ss'Z'}.
+   */
+  static byte[] formatLastmod(long epochSecond) {
+    LocalDateTime dateTime = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    int year = dateTime.getYear();
+    if (year < 0 || year > 9999) {
+      return toBytes(ISO_8601.format(dateTime.toInstant(ZoneOffset.UTC)));
+    }
+    byte[] bytes = new byte[20];
+    putDigits(bytes, 0, year, 4);
+    bytes[4] = '-';
+    putDigits(bytes, 5, dateTime.getMonthValue(), 2);
+    bytes[7] = '-';
+    putDigits(bytes, 8, dateTime.getDayOfMonth(), 2);
+    bytes[10] = 'T';
+    putDigits(bytes, 11, dateTime.getHour(), 2);
+    bytes[13] = ':';
+    putDigits(bytes, 14, dateTime.getMinute(), 2);
+    bytes[16] = ':';
+    putDigits(bytes, 17, dateTime.getSecond(), 2);
+    bytes[19] = 'Z';
+    return bytes;
+  }
+
+  private static void putDigits(byte[] bytes, int off, int value, int digits) {
+    for (int i = off + digits - 1; i >= off; i--) {
+      bytes[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import com.aoapps.servlet.attribute.ScopeEE;
+import com.aoapps.servlet.http.HttpServletUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves sitemaps generated at build time by {@link SiteMapGenerator}, found in {@link #DIRECTORY} of the web
+ * application.  Any sitemap not found there is generated on request as usual.
+ */
+final class StaticSiteMaps {
+
+  /**
+   * The directory, within the web application, containing the generated sitemaps.  Each is stored at its servlet
+   * path, with any page after the first included in its name as given by
+   * {@link #getPath(java.lang.String, java.lang.String)}.
+   */
+  static final String DIRECTORY = "/WEB-INF/semanticcms-core-sitemap";
+
+  private static final String XML_EXTENSION = ".xml";
+
+  private static final String GZIP_EXTENSION = ".gz";
+
+  private static final ScopeEE.Application.Attribute<StaticSiteMaps> APPLICATION_ATTRIBUTE =
+      ScopeEE.APPLICATION.attribute(StaticSiteMaps.class.getName());
+
+  /**
+   * Gets the static sitemaps for the given servlet context, creating it on first use.
+   */
+  static StaticSiteMaps getInstance(ServletContext servletContext) {
+    return APPLICATION_ATTRIBUTE.context(servletContext).computeIfAbsent(name -> new StaticSiteMaps(servletContext));
+  }
+
+  /**
+   * Gets the path of a generated sitemap, relative to {@link #DIRECTORY}.
+   *
+   * @param  servletPath  the servlet path the sitemap is requested at
+   * @param  page  the value of {@link SiteMapServlet#PAGE_PARAM} or {@code null} for the first page
+   *
+   * @return  the path or {@code null} when the page is invalid
+   */
+  static String getPath(String servletPath, String page) {
+    if (page == null || "1".equals(page)) {
+      return servletPath;
+    }
+    int pageNum;
+    try {
+      pageNum = Integer.parseInt(page);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    int extensionPos = servletPath.lastIndexOf(XML_EXTENSION);
+    if (pageNum < 2 || extensionPos == -1) {
+      return null;
+    }
+    return servletPath.substring(0, extensionPos) + '-' + pageNum + servletPath.substring(extensionPos);
+  }
+
+  private static final class Resource {
+
+    private final byte[] bytes;
+    private final String etag;
+
+    private Resource(byte[] bytes, String etag) {
+      this.bytes = bytes;
+      this.etag = etag;
+    }
+  }
+
+  private final ServletContext servletContext;
+
+  /**
+   * Generated sitemaps are only looked for when the directory exists.
+   */
+  private final boolean enabled;
+
+  /**
+   * The generated sitemaps read so far, by path.  This is bounded by the number of generated sitemaps, since only
+   * those found are added.
+   */
+  private final ConcurrentMap<String, Resource> resources = new ConcurrentHashMap<>();
+
+  private StaticSiteMaps(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    this.enabled = servletContext.getResourcePaths(DIRECTORY + '/') != null;
+  }
+
+  private Resource getResource(String path) throws IOException {
+    Resource resource = resources.get(path);
+    if (resource == null) {
+      byte[] bytes;
+      try (InputStream in = servletContext.getResourceAsStream(DIRECTORY + path)) {
+        if (in == null) {
+          return null;
+        }
+        bytes = in.readAllBytes();
+      }
+      MessageDigest digest = ETag.newDigest();
+      digest.update(bytes);
+      resource = new Resource(bytes, ETag.toETag(ETag.getHash(digest), path.endsWith(GZIP_EXTENSION)));
+      Resource existing = resources.putIfAbsent(path, resource);
+      if (existing != null) {
+        resource = existing;
+      }
+    }
+    return resource;
+  }
+
+  /**
+   * Serves the generated sitemap for the request, if there is one.
+   *
+   * @return  {@code true} when served, or {@code false} when there is no generated sitemap for the request and it
+   *          must be generated on request
+   */
+  boolean serve(HttpServletRequest req, HttpServletResponse resp, String contentType) throws IOException {
+    if (!enabled) {
+      return false;
+    }
+    String method = req.getMethod();
+    boolean head = HttpServletUtil.METHOD_HEAD.equals(method);
+    if (!head && !HttpServletUtil.METHOD_GET.equals(method)) {
+      return false;
+    }
+    String path = getPath(req.getServletPath(), req.getParameter(SiteMapServlet.PAGE_PARAM));
+    if (path == null) {
+      return false;
+    }
+    Resource resource = getResource(path);
+    if (resource == null) {
+      return false;
+    }
+    if (!ETag.notModified(req, resp, resource.etag)) {
+      boolean gzip = path.endsWith(GZIP_EXTENSION);
+      if (head) {
+        SiteMapIndexServlet.writeHeaders(resp, gzip, contentType, resource.bytes.length);
+      } else {
+        SiteMapIndexServlet.writeBytes(resp, gzip, contentType, resource.bytes);
+      }
+    }
+    return true;
+  }
+}
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
- * Copyright (C) 2021, 2022, 2023  AO Industries, Inc.
+ * Copyright (C) 2021, 2022, 2023, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,6 +23,7 @@
 module com.semanticcms.core.sitemap {
   exports com.semanticcms.core.sitemap;
   provides javax.servlet.ServletContainerInitializer with com.semanticcms.core.sitemap.SiteMapInitializer;
+  uses com.semanticcms.core.sitemap.SiteMapListener;
   // Direct
   requires com.aoapps.concurrent; // <groupId>com.aoapps</groupId><artifactId>ao-concurrent</artifactId>
   requires com.aoapps.encoding; // <groupId>com.aoapps</groupId><artifactId>ao-encoding</artifactId>
@@ -40,4 +41,6 @@ module com.semanticcms.core.sitemap {
   requires static com.github.spotbugs.annotations; // <groupId>com.github.spotbugs</groupId><artifactId>spotbugs-annotations</artifactId>
   // Java SE
   requires java.logging;
+  requires java.management;
+  requires java.xml;
 }
@@ -0,0 +1,150 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.semanticcms.core.model.PageRef;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.SortedSet;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+/**
+ * Tests {@link BookIndex}.
+ */
+public class BookIndexTest {
+
+  private static final PageRef ROOT = new PageRef("/book", "/index.jspx");
+  private static final PageRef CHILD = new PageRef("/book", "/child.jspx");
+
+  private static SiteMapUrl url(String loc, long lastmod) {
+    return new SiteMapUrl(true, loc, new DateTime(lastmod));
+  }
+
+  private static BookIndex createIndex() {
+    Map<PageRef, BookIndex.PageUrls> pages = new HashMap<>();
+    pages.put(
+        ROOT,
+        new BookIndex.PageUrls(
+            Arrays.asList(url("https://example.com/book/", 1000), url("https://example.com/shared", 1000)),
+            Collections.singleton(CHILD)
+        )
+    );
+    pages.put(
+        CHILD,
+        new BookIndex.PageUrls(
+            Arrays.asList(url("https://example.com/book/child", 2000), url("https://example.com/shared", 1000)),
+            Collections.emptySet()
+        )
+    );
+    return new BookIndex(pages);
+  }
+
+  /**
+   * Tests {@link BookIndex#update(com.semanticcms.core.model.PageRef, com.semanticcms.core.sitemap.BookIndex.PageUrls)}
+   * replaces only the URLs of the updated page, keeping URLs still found by other pages.
+   */
+  @Test
+  public void testUpdate() {
+    BookIndex index = createIndex();
+    assertEquals(3, index.getUrls().size());
+    assertTrue(
+        index.update(
+            CHILD,
+            new BookIndex.PageUrls(
+                Collections.singletonList(url("https://example.com/book/child", 3000)),
+                new HashSet<>()
+            )
+        )
+    );
+    SortedSet<SiteMapUrl> urls = index.getUrls();
+    assertEquals(3, urls.size());
+    assertEquals("https://example.com/book/child", urls.first().getLoc());
+    assertEquals(3000, urls.first().getLastmod().getMillis());
+  }
+
+  /**
+   * Tests {@link BookIndex#update(com.semanticcms.core.model.PageRef, com.semanticcms.core.sitemap.BookIndex.PageUrls)}
+   * requires a new traversal when child pages change or the page is unknown.
+   */
+  @Test
+  public void testUpdateStructureChanged() {
+    BookIndex index = createIndex();
+    assertFalse(
+        index.update(
+            ROOT,
+            new BookIndex.PageUrls(Collections.emptyList(), Collections.emptySet())
+        )
+    );
+    assertFalse(
+        index.update(
+            new PageRef("/book", "/new.jspx"),
+            new BookIndex.PageUrls(Collections.emptyList(), Collections.emptySet())
+        )
+    );
+  }
+
+  /**
+   * Tests {@link BookIndex#update(com.semanticcms.core.model.PageRef, com.semanticcms.core.sitemap.BookIndex.PageUrls, com.semanticcms.core.sitemap.BookIndex.Changes)}
+   * records only the URLs no longer found by any page and the URLs newly found.
+   */
+  @Test
+  public void testUpdateChanges() {
+    BookIndex index = createIndex();
+    BookIndex.Changes changes = new BookIndex.Changes();
+    assertTrue(
+        index.update(
+            CHILD,
+            new BookIndex.PageUrls(
+                Collections.singletonList(url("https://example.com/book/child", 3000)),
+                new HashSet<>()
+            ),
+            changes
+        )
+    );
+    assertEquals(1, changes.getRemoved().size());
+    assertEquals(2000, changes.getRemoved().first().getLastmod().getMillis());
+    assertEquals(1, changes.getAdded().size());
+    assertEquals(3000, changes.getAdded().first().getLastmod().getMillis());
+    // Changing back cancels out
+    assertTrue(
+        index.update(
+            CHILD,
+            new BookIndex.PageUrls(
+                Collections.singletonList(url("https://example.com/book/child", 2000)),
+                new HashSet<>()
+            ),
+            changes
+        )
+    );
+    assertTrue(changes.isEmpty());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.semanticcms.core.model.PageRef;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+/**
+ * Tests {@link BookSiteMap}.
+ */
+public class BookSiteMapTest {
+
+  private static final PageRef PAGE = new PageRef("/book", "/page.jspx");
+
+  private static final int COUNT = SiteMapServlet.MAX_URLS * 2 + 1;
+
+  private static SiteMapUrl url(int i, long lastmod) {
+    return new SiteMapUrl(true, String.format("https://example.com/page-%06d", i), new DateTime(lastmod));
+  }
+
+  private static BookIndex createIndex() {
+    Map<PageRef, BookIndex.PageUrls> pages = new HashMap<>();
+    for (int i = 0; i < COUNT; i++) {
+      pages.put(
+          new PageRef("/book", "/page-" + i + ".jspx"),
+          new BookIndex.PageUrls(Collections.singletonList(url(i, 1000)), Collections.emptySet())
+      );
+    }
+    pages.put(PAGE, new BookIndex.PageUrls(Collections.emptyList(), Collections.emptySet()));
+    return new BookIndex(pages);
+  }
+
+  /**
+   * Tests {@link BookSiteMap#update(com.semanticcms.core.sitemap.BookIndex.Changes)} creates again only the shard
+   * containing the changed URLs, keeping all other shards.
+   */
+  @Test
+  public void testUpdateKeepsOtherShards() throws IOException {
+    BookIndex index = createIndex();
+    BookSiteMap siteMap = SiteMapServlet.createBookSiteMap(index.getUrls());
+    List<BookSiteMap.Shard> shards = siteMap.getShards();
+    assertEquals(3, shards.size());
+    BookIndex.Changes changes = new BookIndex.Changes();
+    assertTrue(
+        index.update(
+            PAGE,
+            new BookIndex.PageUrls(Collections.singletonList(url(COUNT, 2000)), Collections.emptySet()),
+            changes
+        )
+    );
+    BookSiteMap updated = siteMap.update(changes);
+    List<BookSiteMap.Shard> updatedShards = updated.getShards();
+    assertEquals(3, updatedShards.size());
+    assertSame(shards.get(0), updatedShards.get(0));
+    assertSame(shards.get(1), updatedShards.get(1));
+    assertEquals(2, updatedShards.get(2).getUrls().size());
+    assertEquals(2000, updated.getLastModified().getMillis());
+    assertEquals(COUNT + 1, updated.getUrls().size());
+  }
+
+  /**
+   * Tests {@link BookSiteMap#update(com.semanticcms.core.sitemap.BookIndex.Changes)} splits a shard that grows beyond
+   * the limits and drops a shard that becomes empty.
+   */
+  @Test
+  public void testUpdateSplitsAndDrops() throws IOException {
+    BookIndex index = createIndex();
+    BookSiteMap siteMap = SiteMapServlet.createBookSiteMap(index.getUrls());
+    List<BookSiteMap.Shard> shards = siteMap.getShards();
+    BookIndex.Changes changes = new BookIndex.Changes();
+    // Moves the only URL of the last shard into the first shard
+    assertTrue(
+        index.update(
+            new PageRef("/book", "/page-" + (COUNT - 1) + ".jspx"),
+            new BookIndex.PageUrls(Collections.singletonList(url(-1, 1000)), Collections.emptySet()),
+            changes
+        )
+    );
+    BookSiteMap updated = siteMap.update(changes);
+    List<BookSiteMap.Shard> updatedShards = updated.getShards();
+    assertEquals(3, updatedShards.size());
+    assertEquals(SiteMapServlet.MAX_URLS, updatedShards.get(0).getUrls().size());
+    assertEquals(1, updatedShards.get(1).getUrls().size());
+    assertSame(shards.get(1), updatedShards.get(2));
+    assertEquals(COUNT, updated.getUrls().size());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link JarSitemapIndexes#parse(java.io.InputStream, java.lang.String, java.util.List)} to the previous
+ * line-based parser, on a generated sitemap index in the layout written by {@link SiteMapIndexServlet}.
+ *
+ * <p>Run with <code>mvn -Pbenchmark test-compile exec:exec</code>.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class JarSitemapIndexesBenchmark {
+
+  @Param({"1000", "100000"})
+  public int sitemaps;
+
+  private byte[] xml;
+
+  @Setup
+  public void setup() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+    for (int i = 0; i < sitemaps; i++) {
+      String lastmod = new String(SiteMapWriter.formatLastmod(1500000000L + i), StandardCharsets.UTF_8);
+      sb.append("  <sitemap>\n"
+          + "    <loc>https://example.com/apidocs/module-").append(i).append("/sitemap.xml</loc>\n"
+          + "    <lastmod>").append(lastmod).append("</lastmod>\n"
+          + "  </sitemap>\n");
+    }
+    sb.append("</sitemapindex>\n");
+    xml = sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The line-based parser previously used by {@link SiteMapIndexServlet.JarSitemapIndexInitializer}, without its
+   * error checking.
+   */
+  @Benchmark
+  public Object parseLines() throws IOException {
+    List<SiteMapUrl> result = new ArrayList<>();
+    try (
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(new ByteArrayInputStream(xml), StandardCharsets.UTF_8)
+        )
+    ) {
+      String loc = null;
+      DateTime lastmod = null;
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.startsWith("<loc>")) {
+          loc = line.substring("<loc>".length(), line.length() - "</loc>".length());
+        } else if (line.startsWith("<lastmod>")) {
+          lastmod = new DateTime(line.substring("<lastmod>".length(), line.length() - "</lastmod>".length()));
+        } else if (line.startsWith("</sitemap>")) {
+          result.add(new SiteMapUrl(true, loc, lastmod));
+        }
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public Object parseStreaming() throws XMLStreamException {
+    List<SiteMapUrl> result = new ArrayList<>();
+    JarSitemapIndexes.parse(new ByteArrayInputStream(xml), "benchmark", result);
+    return result;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+/**
+ * Tests {@link JarSitemapIndexes}.
+ */
+public class JarSitemapIndexesTest {
+
+  /**
+   * Tests {@link JarSitemapIndexes#parse(java.io.InputStream, java.lang.String, java.util.List)} accepts any layout,
+   * skipping sitemaps without a location and ignoring an invalid last modified.
+   */
+  @Test
+  public void testParse() throws XMLStreamException {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+        + "<sitemap><loc>https://example.com/a/sitemap.xml</loc><lastmod>2017-07-14T02:40:00Z</lastmod></sitemap>"
+        + "<sitemap>\n  <lastmod>\n    2017-07-14\n  </lastmod>\n  <loc>\n    https://example.com/b?c=1&amp;d=2\n  </loc>\n"
+        + "</sitemap>"
+        + "<sitemap><loc>https://example.com/c</loc><lastmod>yesterday</lastmod></sitemap>"
+        + "<sitemap><lastmod>2017</lastmod></sitemap>"
+        + "</sitemapindex>";
+    List<SiteMapUrl> sitemaps = new ArrayList<>();
+    JarSitemapIndexes.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "test", sitemaps);
+    assertEquals(3, sitemaps.size());
+    assertEquals("https://example.com/a/sitemap.xml", sitemaps.get(0).getLoc());
+    assertEquals(1500000000000L, sitemaps.get(0).getLastmod().getMillis());
+    assertEquals("https://example.com/b?c=1&d=2", sitemaps.get(1).getLoc());
+    assertEquals(1499990400000L, sitemaps.get(1).getLastmod().getMillis());
+    assertEquals("https://example.com/c", sitemaps.get(2).getLoc());
+    assertNull(sitemaps.get(2).getLastmod());
+  }
+
+  /**
+   * Tests {@link JarSitemapIndexes#parseLastmod(java.lang.String)} matches Joda-Time, with UTC when
+   * there is no offset.
+   */
+  @Test
+  public void testParseLastmod() {
+    for (String lastmod : new String[]{
+        "2017",
+        "2017-07",
+        "2017-07-14",
+        "2017-07-14T02:40Z",
+        "2017-07-14T02:40:00Z",
+        "2017-07-14T02:40:00.999+05:30",
+        "2017-07-14T02:40:00-08:00"
+    }) {
+      assertEquals(lastmod, new DateTime(lastmod, DateTimeZone.UTC).getMillis(), JarSitemapIndexes.parseLastmod(lastmod));
+    }
+  }
+}
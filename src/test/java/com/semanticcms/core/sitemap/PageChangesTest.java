@@ -0,0 +1,90 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import java.util.Collections;
+import java.util.Properties;
+import org.junit.Test;
+
+/**
+ * Tests {@link PageChanges}.
+ */
+public class PageChangesTest {
+
+  private static final Book BOOK = newBook("/book");
+  private static final Book OTHER = newBook("/other");
+
+  private static Book newBook(String name) {
+    Properties properties = new Properties();
+    properties.setProperty("content.root", "/index.jspx");
+    return new Book(name, "~" + name, true, Collections.emptySet(), properties);
+  }
+
+  /**
+   * Tests a page changed while its book is being traversed is carried into the traversal, while changes to other
+   * books, or after the traversal has ended, are not.
+   */
+  @Test
+  public void testPageChangedDuringTraversal() {
+    PageChanges pageChanges = new PageChanges();
+    PageRef page = new PageRef(BOOK, "/page.jspx");
+    pageChanges.pageChanged(page);
+    PageChanges.Traversal traversal = pageChanges.begin(BOOK);
+    // Before the traversal began
+    assertTrue(traversal.getChanged().isEmpty());
+    pageChanges.pageChanged(new PageRef(OTHER, "/page.jspx"));
+    assertTrue(traversal.getChanged().isEmpty());
+    // During the traversal
+    pageChanges.pageChanged(page);
+    assertEquals(Collections.singleton(page), traversal.getChanged().keySet());
+    pageChanges.end(traversal);
+    pageChanges.pageChanged(new PageRef(BOOK, "/after.jspx"));
+    assertEquals(Collections.singleton(page), traversal.getChanged().keySet());
+    assertFalse(traversal.isInvalidated());
+  }
+
+  /**
+   * Tests a book changed as a whole while being traversed invalidates the traversal.
+   */
+  @Test
+  public void testBookChangedDuringTraversal() {
+    PageChanges pageChanges = new PageChanges();
+    PageChanges.Traversal traversal = pageChanges.begin(BOOK);
+    PageChanges.Traversal other = pageChanges.begin(OTHER);
+    pageChanges.bookChanged(BOOK);
+    assertTrue(traversal.isInvalidated());
+    assertFalse(other.isInvalidated());
+    pageChanges.allChanged();
+    assertTrue(other.isInvalidated());
+    pageChanges.end(traversal);
+    pageChanges.end(other);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletException;
+import org.junit.Test;
+
+/**
+ * Tests {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+  /**
+   * Tests concurrent callers of the same key await a single computation.
+   */
+  @Test
+  public void testCoalesced() throws Exception {
+    SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+    AtomicInteger computations = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch joined = new CountDownLatch(1);
+    Object result = new Object();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> first = executor.submit(() -> singleFlight.get(
+          "key",
+          () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            // Completes once the second caller has joined
+            assertTrue(joined.await(10, TimeUnit.SECONDS));
+            return result;
+          },
+          null
+      ));
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      Object second = singleFlight.get(
+          "key",
+          () -> {
+            computations.incrementAndGet();
+            return new Object();
+          },
+          joined::countDown
+      );
+      assertSame(result, second);
+      assertSame(result, first.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, computations.get());
+    assertEquals(0, singleFlight.size());
+    // Nothing retained once complete
+    assertEquals("again", singleFlight.get("key", () -> "again", null));
+  }
+
+  /**
+   * Tests a caller that may not wait computes independently of a computation in progress.
+   */
+  @Test
+  public void testNotWaiting() throws Exception {
+    SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> first = executor.submit(() -> singleFlight.get(
+          "key",
+          () -> {
+            started.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return "first";
+          },
+          null
+      ));
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      // Would not return when waiting on the first
+      assertEquals(
+          "second",
+          singleFlight.get(
+              "key",
+              () -> "second",
+              () -> fail("Must not join"),
+              false
+          )
+      );
+      assertEquals(1, singleFlight.size());
+      release.countDown();
+      assertEquals("first", first.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(0, singleFlight.size());
+  }
+
+  /**
+   * Tests an exception keeps its type.
+   */
+  @Test
+  public void testException() throws ServletException {
+    SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+    try {
+      singleFlight.get(
+          "key",
+          () -> {
+            throw new IOException("test");
+          },
+          null
+      );
+      fail("IOException expected");
+    } catch (IOException e) {
+      assertEquals(IOException.class, e.getCause().getCause().getClass());
+    }
+    assertEquals(0, singleFlight.size());
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.sitemap;
+
+import static com.aoapps.encoding.TextInXhtmlEncoder.encodeTextInXhtml;
+import static com.aoapps.encoding.TextInXhtmlEncoder.textInXhtmlEncoder;
+
+import com.aoapps.net.URIEncoder;
+import com.semanticcms.core.model.PageRef;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.joda.time.Instant;
+import org.joda.time.ReadableInstant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the stages of sitemap generation after pages have been captured, on a synthetic book.  Each page has one
+ * URL per view, with one in sixteen URLs having no known last modified time.
+ *
+ * <p>Run with <code>mvn -Pbenchmark test-compile exec:exec</code>.  The GC profiler is enabled by the profile, so
+ * {@code gc.alloc.rate.norm} of {@link #render()} may be compared to {@link #renderBaseline()}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SiteMapBenchmark {
+
+  private static final String BOOK = "/book";
+
+  @Param({"1000", "100000", "500000"})
+  public int pages;
+
+  @Param({"1", "20"})
+  public int views;
+
+  private Map<PageRef, BookIndex.PageUrls> pageUrls;
+  private List<SiteMapUrl> shuffled;
+  private SortedSet<SiteMapUrl> urls;
+  private BookSiteMap siteMap;
+  private BookIndex index;
+  private PageRef updatePageRef;
+  private BookIndex.PageUrls[] updates;
+  private int updateCount;
+
+  private static SiteMapUrl createUrl(Random random, int page, int view) {
+    String loc = "https://example.com" + BOOK + "/page-" + page + (view == 0 ? "" : ("?view=view-" + view));
+    return new SiteMapUrl(
+        true,
+        loc,
+        random.nextInt(16) == 0 ? null : new Instant(1500000000000L + random.nextInt(1000000000))
+    );
+  }
+
+  private BookIndex.PageUrls createPageUrls(Random random, int page) {
+    List<SiteMapUrl> list = new ArrayList<>(views);
+    for (int view = 0; view < views; view++) {
+      list.add(createUrl(random, page, view));
+    }
+    return new BookIndex.PageUrls(list, Collections.emptySet());
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(pages * 31L + views);
+    pageUrls = new HashMap<>();
+    shuffled = new ArrayList<>(pages * views);
+    for (int page = 0; page < pages; page++) {
+      BookIndex.PageUrls pageUrl = createPageUrls(random, page);
+      pageUrls.put(new PageRef(BOOK, "/page-" + page + ".jspx"), pageUrl);
+    }
+    index = new BookIndex(new HashMap<>(pageUrls));
+    urls = index.getUrls();
+    shuffled.addAll(urls);
+    Collections.shuffle(shuffled, random);
+    siteMap = SiteMapServlet.createBookSiteMap(urls);
+    updatePageRef = new PageRef(BOOK, "/page-0.jspx");
+    updates = new BookIndex.PageUrls[]{createPageUrls(random, 0), createPageUrls(random, 0)};
+  }
+
+  /**
+   * Sorts all URLs by {@link SiteMapUrl#compareTo(com.semanticcms.core.sitemap.SiteMapUrl)}.
+   */
+  @Benchmark
+  public Object sortUrls() {
+    return new TreeSet<>(shuffled);
+  }
+
+  /**
+   * Indexes the URLs of all pages, as after a full traversal.
+   */
+  @Benchmark
+  public Object createBookIndex() {
+    return new BookIndex(pageUrls);
+  }
+
+  /**
+   * Updates the URLs of one page, as after {@link SiteMapServlet#invalidate(javax.servlet.ServletContext, com.semanticcms.core.model.PageRef)}.
+   */
+  @Benchmark
+  public boolean updatePage() {
+    return index.update(updatePageRef, updates[updateCount++ & 1]);
+  }
+
+  /**
+   * Gets a copy of all URLs from the index.
+   */
+  @Benchmark
+  public Object getUrls() {
+    return index.getUrls();
+  }
+
+  /**
+   * Splits the URLs into sitemaps within the protocol limits.
+   */
+  @Benchmark
+  public Object createBookSiteMap() throws IOException {
+    return SiteMapServlet.createBookSiteMap(urls);
+  }
+
+  private byte[] render(boolean gzip) throws IOException {
+    return SiteMapIndexServlet.render(gzip, out -> {
+      for (SiteMapUrl url : siteMap.getShards().get(0).getUrls()) {
+        out.writeUrl(url);
+      }
+    });
+  }
+
+  /**
+   * Renders the first sitemap.
+   */
+  @Benchmark
+  public byte[] render() throws IOException {
+    return render(false);
+  }
+
+  /**
+   * Renders the first sitemap, gzip-compressed.
+   */
+  @Benchmark
+  public byte[] renderGzip() throws IOException {
+    return render(true);
+  }
+
+  /**
+   * Renders the first sitemap as before {@link SiteMapWriter}: a {@link Date} and a per-request
+   * {@link SimpleDateFormat} for each last modified, each loc encoded through {@link URIEncoder} then
+   * {@link com.aoapps.encoding.TextInXhtmlEncoder}, and each line written with {@link PrintWriter#println(java.lang.String)}.
+   */
+  private byte[] renderBaseline(boolean gzip) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    OutputStream stream = gzip ? new GZIPOutputStream(bout) : bout;
+    DateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    iso8601.setTimeZone(TimeZone.getTimeZone("UTC"));
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      for (SiteMapUrl url : siteMap.getShards().get(0).getUrls()) {
+        out.println("  <url>");
+        out.print("    <loc>");
+        URIEncoder.encodeURI(
+            url.getLoc(),
+            textInXhtmlEncoder,
+            out
+        );
+        out.println("</loc>");
+        ReadableInstant lastmod = url.getLastmod();
+        if (lastmod != null) {
+          out.print("    <lastmod>");
+          encodeTextInXhtml(iso8601.format(new Date(lastmod.getMillis())), out);
+          out.println("</lastmod>");
+        }
+        out.println("  </url>");
+      }
+    }
+    return bout.toByteArray();
+  }
+
+  /**
+   * Renders the first sitemap as before {@link SiteMapWriter}, for comparison with {@link #render()}.
+   */
+  @Benchmark
+  public byte[] renderBaseline() throws IOException {
+    return renderBaseline(false);
+  }
+
+  /**
+   * Renders the first sitemap as before {@link SiteMapWriter}, gzip-compressed, for comparison with
+   * {@link #renderGzip()}.
+   */
+  @Benchmark
+  public byte[] renderBaselineGzip() throws IOException {
+    return renderBaseline(true);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+/**
+ * Tests {@link SiteMapServlet}.
+ */
+public class SiteMapServletTest {
+
+  private static SortedSet<SiteMapUrl> createUrls(int count, String locPrefix) {
+    SortedSet<SiteMapUrl> urls = new TreeSet<>();
+    for (int i = 0; i < count; i++) {
+      urls.add(new SiteMapUrl(true, locPrefix + i, new DateTime(1500000000000L + i * 1000L)));
+    }
+    return urls;
+  }
+
+  /**
+   * Tests {@link SiteMapServlet#split(java.util.SortedSet)} within the limits.
+   */
+  @Test
+  public void testSplitWithinLimits() throws IOException {
+    SortedSet<SiteMapUrl> urls = createUrls(SiteMapServlet.MAX_URLS, "https://example.com/page-");
+    List<SortedSet<SiteMapUrl>> shards = SiteMapServlet.split(urls);
+    assertEquals(1, shards.size());
+    assertSame(urls, shards.get(0));
+  }
+
+  /**
+   * Tests {@link SiteMapServlet#split(java.util.SortedSet)} beyond the maximum number of URLs.
+   */
+  @Test
+  public void testSplitMaxUrls() throws IOException {
+    SortedSet<SiteMapUrl> urls = createUrls(SiteMapServlet.MAX_URLS * 2 + 1, "https://example.com/page-");
+    List<SortedSet<SiteMapUrl>> shards = SiteMapServlet.split(urls);
+    assertEquals(3, shards.size());
+    assertEquals(SiteMapServlet.MAX_URLS, shards.get(0).size());
+    assertEquals(SiteMapServlet.MAX_URLS, shards.get(1).size());
+    assertEquals(1, shards.get(2).size());
+  }
+
+  /**
+   * Tests {@link SiteMapServlet#split(java.util.SortedSet)} beyond the maximum number of bytes.
+   */
+  @Test
+  public void testSplitMaxBytes() throws IOException {
+    StringBuilder longPrefix = new StringBuilder("https://example.com/");
+    for (int i = 0; i < 2000; i++) {
+      longPrefix.append('a');
+    }
+    longPrefix.append('-');
+    SortedSet<SiteMapUrl> urls = createUrls(SiteMapServlet.MAX_URLS, longPrefix.toString());
+    List<SortedSet<SiteMapUrl>> shards = SiteMapServlet.split(urls);
+    assertEquals(3, shards.size());
+    int total = 0;
+    for (SortedSet<SiteMapUrl> shard : shards) {
+      total += shard.size();
+    }
+    assertEquals(SiteMapServlet.MAX_URLS, total);
+  }
+}
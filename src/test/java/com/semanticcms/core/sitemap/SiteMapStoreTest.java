@@ -0,0 +1,118 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.semanticcms.core.servlet.View;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link SiteMapStore}.
+ */
+public class SiteMapStoreTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /**
+   * Tests a sitemap is read back as written, with the time its computation began, and only for the same book and
+   * context root.
+   */
+  @Test
+  public void testWriteRead() throws IOException {
+    SiteMapStore store = new SiteMapStore(temporaryFolder.newFolder().toPath().resolve("store"), 60000, 10);
+    List<View> views = Collections.emptyList();
+    SortedSet<SiteMapUrl> urls = new TreeSet<>();
+    urls.add(new SiteMapUrl(true, "https://example.com/book/", new DateTime(1500000000000L)));
+    urls.add(new SiteMapUrl(true, "https://example.com/book/unknown", null));
+    long computedMillis = System.currentTimeMillis() - 1000;
+    store.write("/book", "https://example.com/", views, urls, computedMillis);
+
+    SiteMapStore.Stored stored = store.read("/book", "https://example.com/", views);
+    assertNotNull(stored);
+    assertEquals(computedMillis, stored.getComputedMillis());
+    List<SiteMapUrl> expected = new ArrayList<>(urls);
+    List<SiteMapUrl> actual = new ArrayList<>(stored.getUrls());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(0, expected.get(i).compareTo(actual.get(i)));
+    }
+    assertNull(store.read("/book", "https://other.example.com/", views));
+    assertNull(store.read("/other", "https://example.com/", views));
+  }
+
+  /**
+   * Tests only the most recently written files are kept, and none once expired.
+   */
+  @Test
+  public void testPrune() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    List<View> views = Collections.emptyList();
+    SortedSet<SiteMapUrl> urls = new TreeSet<>();
+    SiteMapStore store = new SiteMapStore(directory, 60000, 2);
+    store.write("/book", "https://one.example.com/", views, urls, System.currentTimeMillis());
+    // Written longer ago than the others
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path file : stream) {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 30000));
+      }
+    }
+    store.write("/book", "https://two.example.com/", views, urls, System.currentTimeMillis());
+    store.write("/book", "https://three.example.com/", views, urls, System.currentTimeMillis());
+    assertEquals(2, countFiles(directory));
+    assertNull(store.read("/book", "https://one.example.com/", views));
+    assertNotNull(store.read("/book", "https://two.example.com/", views));
+    assertNotNull(store.read("/book", "https://three.example.com/", views));
+
+    new SiteMapStore(directory, 0, 2).prune();
+    assertEquals(0, countFiles(directory));
+  }
+
+  private static int countFiles(Path directory) throws IOException {
+    int count = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Iterator<Path> iter = stream.iterator(); iter.hasNext(); iter.next()) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
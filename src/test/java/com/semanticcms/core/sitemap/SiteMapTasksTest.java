@@ -0,0 +1,112 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aoapps.lang.i18n.ThreadLocale;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Tests {@link SiteMapTasks}, with platform threads so that it runs on any Java version.
+ */
+public class SiteMapTasksTest {
+
+  private static final ThreadFactory THREAD_FACTORY = Executors.defaultThreadFactory();
+
+  /**
+   * Tests the results are in the order of the tasks.
+   */
+  @Test
+  public void testCallAll() throws Exception {
+    List<Callable<Integer>> tasks = Arrays.asList(
+        () -> {
+          Thread.sleep(50);
+          return 1;
+        },
+        () -> 2,
+        () -> 3
+    );
+    assertEquals(Arrays.asList(1, 2, 3), SiteMapTasks.callAll(THREAD_FACTORY, tasks));
+  }
+
+  /**
+   * Tests each task runs with the locale of the calling thread.
+   */
+  @Test
+  public void testThreadLocale() throws Exception {
+    Locale locale = ThreadLocale.get();
+    try {
+      ThreadLocale.set(Locale.JAPAN);
+      List<Callable<Locale>> tasks = Arrays.asList(ThreadLocale::get, ThreadLocale::get);
+      assertEquals(Arrays.asList(Locale.JAPAN, Locale.JAPAN), SiteMapTasks.callAll(THREAD_FACTORY, tasks));
+    } finally {
+      ThreadLocale.set(locale);
+    }
+  }
+
+  /**
+   * Tests a failure cancels the other tasks, which have stopped once returned.
+   */
+  @Test
+  public void testCancelOnFailure() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicBoolean stopped = new AtomicBoolean();
+    List<Callable<Object>> tasks = Arrays.asList(
+        () -> {
+          started.countDown();
+          try {
+            // Only interrupted
+            new CountDownLatch(1).await();
+            return null;
+          } finally {
+            stopped.set(true);
+          }
+        },
+        () -> {
+          started.await();
+          throw new IOException("test");
+        }
+    );
+    try {
+      SiteMapTasks.callAll(THREAD_FACTORY, tasks);
+      fail("ExecutionException expected");
+    } catch (ExecutionException e) {
+      assertEquals(IOException.class, e.getCause().getClass());
+    }
+    assertTrue(stopped.get());
+  }
+}
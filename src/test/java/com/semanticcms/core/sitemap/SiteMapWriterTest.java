@@ -0,0 +1,81 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+/**
+ * Tests {@link SiteMapWriter}.
+ */
+public class SiteMapWriterTest {
+
+  /**
+   * Tests {@link SiteMapWriter#writeUrl(com.semanticcms.core.sitemap.SiteMapUrl)} escapes and formats the same as
+   * the previous rendering through {@code URIEncoder}, {@code TextInXhtmlEncoder}, and {@link SimpleDateFormat}.
+   */
+  @Test
+  public void testWriteUrl() throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    SiteMapWriter out = new SiteMapWriter(bout);
+    out.writeUrl(new SiteMapUrl(true, "https://example.com/a b?c=1&d=\u00e9", new DateTime(1500000000999L)));
+    out.writeUrl(new SiteMapUrl(true, "https://example.com/", null));
+    out.flush();
+    assertEquals(
+        "  <url>\n"
+            + "    <loc>https://example.com/a%20b?c=1&amp;d=%C3%A9</loc>\n"
+            + "    <lastmod>2017-07-14T02:40:00Z</lastmod>\n"
+            + "  </url>\n"
+            + "  <url>\n"
+            + "    <loc>https://example.com/</loc>\n"
+            + "  </url>\n",
+        new String(bout.toByteArray(), StandardCharsets.UTF_8)
+    );
+    assertEquals(bout.size(), out.getCount());
+  }
+
+  /**
+   * Tests {@link SiteMapWriter#formatLastmod(long)} matches {@link SimpleDateFormat}.
+   */
+  @Test
+  public void testFormatLastmod() {
+    DateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    iso8601.setTimeZone(TimeZone.getTimeZone("UTC"));
+    for (long millis : new long[]{0, -1, 1500000000999L, 253402300799000L}) {
+      assertEquals(
+          iso8601.format(new Date(millis)),
+          new String(SiteMapWriter.formatLastmod(Math.floorDiv(millis, 1000)), StandardCharsets.UTF_8)
+      );
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * semanticcms-core-sitemap - Automatic sitemaps for SemanticCMS.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-sitemap.
+ *
+ * semanticcms-core-sitemap is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-sitemap is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-sitemap.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link StaticSiteMaps}.
+ */
+public class StaticSiteMapsTest {
+
+  /**
+   * Tests {@link StaticSiteMaps#getPath(java.lang.String, java.lang.String)}.
+   */
+  @Test
+  public void testGetPath() {
+    assertEquals("/book/sitemap.xml.gz", StaticSiteMaps.getPath("/book/sitemap.xml.gz", null));
+    assertEquals("/book/sitemap.xml.gz", StaticSiteMaps.getPath("/book/sitemap.xml.gz", "1"));
+    assertEquals("/book/sitemap-2.xml.gz", StaticSiteMaps.getPath("/book/sitemap.xml.gz", "2"));
+    assertEquals("/book/sitemap-10.xml", StaticSiteMaps.getPath("/book/sitemap.xml", "10"));
+    assertNull(StaticSiteMaps.getPath("/book/sitemap.xml", "0"));
+    assertNull(StaticSiteMaps.getPath("/book/sitemap.xml", "../x"));
+  }
+}